@@ -22,7 +22,7 @@ public class Main {
                 Path.of("plugins"), new JsonManifestLoader(), classLoaderContainer, logger
         );
 
-        final var pluginContainer = new DistinctPluginContainer(logger);
+        final var pluginContainer = new DistinctPluginContainer(logger, classLoaderContainer);
 
         final var pluginBootstrap = new OrderedPluginBootstrap(pluginDiscoveryService, pluginContainer);
         pluginBootstrap.loadPlugins();
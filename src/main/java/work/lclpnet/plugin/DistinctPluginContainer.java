@@ -2,39 +2,151 @@ package work.lclpnet.plugin;
 
 import org.slf4j.Logger;
 import work.lclpnet.plugin.graph.DAG;
-import work.lclpnet.plugin.load.LoadablePlugin;
-import work.lclpnet.plugin.load.LoadedPlugin;
-import work.lclpnet.plugin.load.PluginAlreadyLoadedException;
-import work.lclpnet.plugin.load.PluginLoadException;
+import work.lclpnet.plugin.load.*;
 
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 public class DistinctPluginContainer implements PluginContainer {
 
-    private final Map<String, LoadedPlugin> loadedPlugins = new HashMap<>();
+    /* immutable snapshot of the loaded plugins, replaced under the lock on every change; readers do not lock */
+    private volatile Registry registry = Registry.EMPTY;
     private final Logger logger;
     private final ReentrantLock lock = new ReentrantLock();
     private final DAG<LoadedPlugin> dependencyGraph = new DAG<>();
+    private final Map<String, CompletableFuture<Void>> preloads = new ConcurrentHashMap<>();
+    private final PluginUnloadTracker unloadTracker;
+    private volatile UnloadGcPolicy unloadGcPolicy = UnloadGcPolicy.NEVER;
+    @Nullable
+    private volatile UnloadGcResult lastUnloadGc = null;
+    /* plugins unloaded in the current batch, guarded by the lock */
+    private int batchUnloads = 0;
+    /* plugins that are currently being loaded by id, guarded by the lock; they are registered once they loaded */
+    private final Map<String, Loading> loading = new HashMap<>();
+    /* ids of registered plugins that are being unloaded without holding the lock, guarded by the lock */
+    private final Set<String> unloading = new HashSet<>();
+    /* signalled when a plugin finished loading or unloading */
+    private final Condition settled = lock.newCondition();
+    /* set while Plugin.unload() runs on an unload executor thread */
+    private final ThreadLocal<Boolean> unloadThread = ThreadLocal.withInitial(() -> false);
+    @Nullable
+    private volatile ClassPreloader classPreloader = null;
+    @Nullable
+    private volatile Executor unloadExecutor = null;
+    @Nullable
+    private final ClassLoaderContainer classLoaderContainer;
 
     public DistinctPluginContainer(Logger logger) {
+        this(logger, new PluginUnloadTracker(logger));
+    }
+
+    public DistinctPluginContainer(Logger logger, @Nullable ClassLoaderContainer classLoaderContainer) {
+        this(logger, new PluginUnloadTracker(logger), classLoaderContainer);
+    }
+
+    public DistinctPluginContainer(Logger logger, PluginUnloadTracker unloadTracker) {
+        this(logger, unloadTracker, null);
+    }
+
+    /**
+     * Creates a new plugin container.
+     *
+     * @param logger               The logger.
+     * @param unloadTracker        A tracker that verifies that the class loaders of unloaded plugins are garbage collected.
+     * @param classLoaderContainer The class loader container of the loaded plugins. When all plugins are unloaded,
+     *                             their class loaders are removed from it at once. If null, the class loader containers
+     *                             of the loaded {@link JarLoadedPlugin}s are used.
+     */
+    public DistinctPluginContainer(Logger logger, PluginUnloadTracker unloadTracker,
+                                   @Nullable ClassLoaderContainer classLoaderContainer) {
         this.logger = logger;
+        this.unloadTracker = Objects.requireNonNull(unloadTracker);
+        this.classLoaderContainer = classLoaderContainer;
+    }
+
+    /**
+     * Get the tracker that reports whether unloaded plugins were garbage collected.
+     * @return The unload tracker.
+     */
+    public PluginUnloadTracker getUnloadTracker() {
+        return unloadTracker;
+    }
+
+    /**
+     * Set a class preloader, which preloads the classes declared in the plugin manifests after each plugin is loaded.
+     * The preload runs in the background; it never holds the container lock.
+     *
+     * @param classPreloader The class preloader, or null to disable preloading.
+     * @see work.lclpnet.plugin.manifest.PluginManifest#preload()
+     */
+    public void setClassPreloader(@Nullable ClassPreloader classPreloader) {
+        this.classPreloader = classPreloader;
+    }
+
+    /**
+     * Unload dependants in parallel. Dependants are unloaded in reverse dependency levels;
+     * the {@link Plugin#unload()} methods of all plugins within a level run concurrently on the executor,
+     * so that unloading a widely used plugin takes time proportional to the depth of its dependants.
+     * <p>
+     * The container lock is released while the executor unloads a level, so that plugins can query the container
+     * from within {@link Plugin#unload()}. Meanwhile, other unloads of the affected plugins wait, and plugins that
+     * depend on them cannot be loaded.
+     * </p>
+     *
+     * @param unloadExecutor The executor to unload plugins with, or null to unload plugins one after another.
+     */
+    public void setUnloadExecutor(@Nullable Executor unloadExecutor) {
+        this.unloadExecutor = unloadExecutor;
+    }
+
+    /**
+     * Get the pending class preload of a plugin.
+     *
+     * @param id The plugin id.
+     * @return A future that completes when the preload has finished, or an empty optional if no preload is pending.
+     */
+    public Optional<CompletableFuture<Void>> getPreload(String id) {
+        return Optional.ofNullable(preloads.get(id));
     }
 
     @Override
     public boolean isPluginLoaded(String id) {
-        return getPlugin(id).isPresent();
+        return registry.byId().containsKey(id);
     }
 
+    /**
+     * Get the loaded plugins.
+     * @return An immutable snapshot of the loaded plugins, which is not affected by later changes.
+     */
     @Override
     public Set<LoadedPlugin> getPlugins() {
-        return new HashSet<>(loadedPlugins.values());
+        return registry.plugins();
     }
 
     @Override
     public Optional<LoadedPlugin> getPlugin(String id) {
-        return Optional.ofNullable(loadedPlugins.get(id));
+        return Optional.ofNullable(registry.byId().get(id));
+    }
+
+    /**
+     * Get the version of the set of loaded plugins. The version increases with every loaded or unloaded plugin.
+     * @return The current version.
+     */
+    public long getVersion() {
+        return registry.version();
     }
 
     @Override
@@ -51,69 +163,223 @@ public class DistinctPluginContainer implements PluginContainer {
     @Override
     public List<LoadedPlugin> getOrderedDependencies(Set<LoadedPlugin> plugins) {
         Set<DAG.Node<LoadedPlugin>> rootNodes = new HashSet<>();
+        List<DAG.Node<LoadedPlugin>> dependencyOrder;
 
-        for (LoadedPlugin plugin : plugins) {
-            var node = dependencyGraph.getNode(plugin.getId()).orElseThrow();
-            rootNodes.add(node);
-        }
+        // the dependency graph is modified by concurrent loads
+        lock.lock();
+
+        try {
+            for (LoadedPlugin plugin : plugins) {
+                var node = dependencyGraph.getNode(plugin.getId()).orElseThrow();
+                rootNodes.add(node);
+            }
 
-        var dependencyOrder = dependencyGraph.getTopologicalOrder(rootNodes);
+            dependencyOrder = dependencyGraph.getTopologicalOrder(rootNodes);
+        } finally {
+            lock.unlock();
+        }
 
         return dependencyOrder.stream()
                 .map(DAG.Node::getObj)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Load a plugin.
+     * The lock is only held to check and register the plugin. The plugin is created and loaded without holding it,
+     * so that independent plugins can be loaded concurrently from different threads.
+     * <p>
+     * The plugin is registered before {@link Plugin#load()} is called, so that it can look itself up in the container.
+     * If the plugin fails to load, the registration is rolled back. Unloading the plugin or one of its dependencies
+     * waits until the plugin is loaded.
+     * </p>
+     *
+     * @param loadable The plugin to load.
+     * @return The loaded plugin, or an empty optional if the plugin threw an error on load.
+     */
     @Override
     public Optional<LoadedPlugin> loadPlugin(LoadablePlugin loadable) {
+        final var id = loadable.getManifest().id();
+
+        beginLoading(loadable);
+
+        final LoadedPlugin loaded;
+
+        try {
+            loaded = loadable.load();
+
+            try {
+                register(loadable, loaded);
+            } catch (Throwable t) {
+                discard(List.of(loaded));
+                throw t;
+            }
+
+            try {
+                if (!initialize(loaded)) {
+                    unregister(loaded);
+                    discard(List.of(loaded));
+                    return Optional.empty();
+                }
+            } catch (Throwable t) {
+                unregister(loaded);
+                discard(List.of(loaded));
+                throw t;
+            }
+        } finally {
+            endLoading(id);
+        }
+
+        onPluginLoaded(loaded);
+        preloadClasses(loaded);
+
+        return Optional.of(loaded);
+    }
+
+    private void beginLoading(LoadablePlugin loadable) {
+        final var manifest = loadable.getManifest();
+
         lock.lock();
 
-        // check if the plugin can be loaded
         try {
             ensurePluginCanBeLoaded(loadable);
-        } catch (Throwable t) {
+
+            if (loading.containsKey(manifest.id())) {
+                throw new PluginAlreadyLoadedException("Plugin with id '%s' is already being loaded".formatted(manifest.id()));
+            }
+
+            for (var dependency : manifest.dependsOn()) {
+                if (loading.containsKey(dependency)) {
+                    throw new PluginLoadException("Dependency '%s' is still loading".formatted(dependency));
+                }
+
+                if (unloading.contains(dependency)) {
+                    throw new PluginLoadException("Dependency '%s' is being unloaded".formatted(dependency));
+                }
+            }
+
+            loading.put(manifest.id(), new Loading(Set.copyOf(manifest.dependsOn()), Thread.currentThread()));
+        } finally {
             lock.unlock();
-            throw t;
         }
+    }
 
-        final var id = loadable.getManifest().id();
-        final var loaded = loadable.load();
+    private void endLoading(String id) {
+        lock.lock();
 
-        loadedPlugins.put(id, loaded);
+        try {
+            loading.remove(id);
+            settled.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        addToDependencyGraph(loadable, loaded);
+    /**
+     * Wait until none of the given plugins, and no plugin that depends on one of them, is loading.
+     * The lock has to be held; it is released while waiting.
+     *
+     * @param ids          The ids of the plugins, or null to wait for all loading plugins.
+     * @param timeoutNanos The maximum time to wait.
+     * @return False, if the timeout elapsed or the thread was interrupted while plugins were still loading.
+     */
+    private boolean awaitLoading(@Nullable Set<String> ids, long timeoutNanos) {
+        long remaining = timeoutNanos;
 
-        boolean error = false;
+        while (true) {
+            Map.Entry<String, Loading> conflict = null;
 
-        try {
-            onPluginLoading(loaded);
-        } catch (Throwable t) {
-            logger.error("PluginContainer error. Unloading the plugin immediately...", t);
-            error = true;
+            for (var entry : loading.entrySet()) {
+                if (ids == null || ids.contains(entry.getKey())
+                        || !Collections.disjoint(ids, entry.getValue().dependsOn())) {
+                    conflict = entry;
+                    break;
+                }
+            }
+
+            if (conflict == null) return true;
+
+            if (conflict.getValue().thread() == Thread.currentThread()) {
+                throw new IllegalStateException("Plugin '%s' cannot unload itself or its dependencies while it is loading"
+                        .formatted(conflict.getKey()));
+            }
+
+            if (remaining <= 0) return false;
+
+            try {
+                remaining = settled.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for plugins to load");
+                return false;
+            }
         }
+    }
+
+    /**
+     * Register a loaded plugin in the registry and the dependency graph at once.
+     * If the plugin cannot be registered, neither is changed.
+     */
+    private void register(LoadablePlugin loadable, LoadedPlugin loaded) {
+        lock.lock();
 
-        if (!error) {
-            Plugin plugin = loaded.getPlugin();
+        try {
+            // dependencies might have been removed, if a shutdown did not wait for the plugin to load
+            ensurePluginCanBeLoaded(loadable);
 
             try {
-                plugin.load();
+                addToDependencyGraph(loadable, loaded);
             } catch (Throwable t) {
-                logger.error("Plugin '%s' threw an error on load. Unloading the plugin immediately...".formatted(id), t);
-                error = true;
+                dependencyGraph.removeNode(loaded.getId());
+                throw t;
             }
+
+            registry = registry.with(loaded);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        lock.unlock();
+    /**
+     * Roll back the registration of a plugin that failed to load.
+     * The plugin cannot have dependants, as plugins cannot be loaded while one of their dependencies is loading.
+     */
+    private void unregister(LoadedPlugin loaded) {
+        lock.lock();
 
-        if (error) {
-            this.unloadPlugin(loaded);
-            return Optional.empty();
-        } else {
-            onPluginLoaded(loaded);
-            return Optional.of(loaded);
+        try {
+            registry = registry.without(loaded.getId());
+            dependencyGraph.removeNode(loaded.getId());
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Call the load hooks of a registered plugin.
+     * @param loaded The loaded plugin.
+     * @return True, if the plugin was loaded without errors.
+     */
+    private boolean initialize(LoadedPlugin loaded) {
+        try {
+            onPluginLoading(loaded);
+        } catch (Throwable t) {
+            logger.error("PluginContainer error. Unloading the plugin immediately...", t);
+            return false;
+        }
+
+        Plugin plugin = loaded.getPlugin();
+
+        try {
+            plugin.load();
+        } catch (Throwable t) {
+            logger.error("Plugin '%s' threw an error on load. Unloading the plugin immediately...".formatted(loaded.getId()), t);
+            return false;
+        }
+
+        return true;
+    }
+
     /**
      * Called after a plugin was created and before it is loaded.
      * @param plugin The loaded plugin, which is about to load.
@@ -130,6 +396,189 @@ public class DistinctPluginContainer implements PluginContainer {
         logger.info("Plugin '{}' has been loaded.", plugin.getManifest().id());
     }
 
+    private void preloadClasses(LoadedPlugin loaded) {
+        final ClassPreloader preloader = this.classPreloader;
+
+        if (preloader == null || loaded.getManifest().preload().isEmpty()) return;
+
+        if (!(loaded.getPlugin().getClass().getClassLoader() instanceof PluginClassLoader classLoader)) return;
+
+        final String id = loaded.getId();
+        final CompletableFuture<Void> preload = preloader.preload(classLoader);
+
+        preloads.put(id, preload);
+
+        preload.whenComplete((res, err) -> {
+            preloads.remove(id, preload);
+
+            if (err != null && !preload.isCancelled()) {
+                logger.warn("Failed to preload classes of plugin '%s'".formatted(id), err);
+            }
+        });
+    }
+
+    /**
+     * Replace loaded plugins with new versions, with minimal downtime.
+     * <p>
+     * The new versions are loaded into fresh class loaders next to the old versions, while the old versions stay
+     * active. Then, the registry entries are swapped atomically and the old versions are unloaded.
+     * If a new version fails to load, the new versions are discarded and the old versions remain loaded.
+     * Note that {@link Plugin#load()} of a new version runs while its old version is still active.
+     * </p>
+     *
+     * @param replacements The new plugin versions, in dependency order.
+     *                     They have to include all dependants of the replaced plugins.
+     * @return The new versions, or an empty optional if a new version failed to load and the old versions were kept.
+     * @throws PluginLoadException If a replaced plugin is not loaded, or a dependant is not replaced.
+     */
+    @Override
+    public Optional<List<LoadedPlugin>> replacePlugins(List<? extends LoadablePlugin> replacements) {
+        final Map<String, LoadedPlugin> previous = collectReplaced(replacements);
+        final List<LoadedPlugin> created = new ArrayList<>(replacements.size());
+
+        try {
+            for (var loadable : replacements) {
+                var loaded = loadable.load();
+                created.add(loaded);
+
+                if (!initialize(loaded)) {
+                    discard(created);
+                    return Optional.empty();
+                }
+            }
+        } catch (Throwable t) {
+            discard(created);
+            throw t;
+        }
+
+        int unloaded = 0;
+
+        lock.lock();
+
+        try {
+            try {
+                // plugins that depend on the old versions have to be replaced as well
+                awaitLoading(previous.keySet(), Long.MAX_VALUE);
+
+                // the plugins might have changed while the new versions were loading
+                ensureReplaceable(previous);
+            } catch (Throwable t) {
+                discard(created);
+                throw t;
+            }
+
+            registry = registry.with(created);
+
+            for (String id : previous.keySet()) {
+                dependencyGraph.removeNode(id);
+            }
+
+            for (int i = 0; i < created.size(); i++) {
+                addToDependencyGraph(replacements.get(i), created.get(i));
+            }
+
+            // unload the old versions, dependants first
+            List<LoadedPlugin> retired = new ArrayList<>(previous.values());
+            Collections.reverse(retired);
+
+            for (LoadedPlugin old : retired) {
+                beginUnload(old);
+                unloadInstance(old);
+                trackUnload(old);
+                old.remove();
+                onPluginUnloaded(old);
+            }
+
+            if (lock.getHoldCount() == 1) {
+                unloaded = batchUnloads;
+                batchUnloads = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (unloaded > 0) {
+            applyUnloadGcPolicy(unloaded);
+        }
+
+        for (LoadedPlugin loaded : created) {
+            onPluginLoaded(loaded);
+            preloadClasses(loaded);
+        }
+
+        return Optional.of(created);
+    }
+
+    private Map<String, LoadedPlugin> collectReplaced(List<? extends LoadablePlugin> replacements) {
+        final Map<String, LoadedPlugin> previous = new LinkedHashMap<>();
+
+        for (var loadable : replacements) {
+            var manifest = loadable.getManifest();
+
+            for (var dependency : manifest.dependsOn()) {
+                if (!isPluginLoaded(dependency)) {
+                    throw new PluginLoadException("Unknown dependency '%s'".formatted(dependency));
+                }
+
+                if (!previous.containsKey(dependency) && replacements.stream()
+                        .anyMatch(other -> other.getManifest().id().equals(dependency))) {
+                    throw new PluginLoadException("Plugin '%s' has to be replaced after its dependency '%s'"
+                            .formatted(manifest.id(), dependency));
+                }
+            }
+
+            var old = getPlugin(manifest.id())
+                    .orElseThrow(() -> new PluginLoadException("Plugin '%s' is not loaded".formatted(manifest.id())));
+
+            if (previous.put(manifest.id(), old) != null) {
+                throw new PluginLoadException("Duplicate plugin id '%s'".formatted(manifest.id()));
+            }
+        }
+
+        lock.lock();
+
+        try {
+            ensureReplaceable(previous);
+        } finally {
+            lock.unlock();
+        }
+
+        return previous;
+    }
+
+    private void ensureReplaceable(Map<String, LoadedPlugin> previous) {
+        for (var entry : previous.entrySet()) {
+            final LoadedPlugin old = entry.getValue();
+
+            if (registry.byId().get(entry.getKey()) != old || unloading.contains(entry.getKey())) {
+                throw new PluginLoadException("Plugin '%s' was unloaded during the reload".formatted(entry.getKey()));
+            }
+
+            for (LoadedPlugin dependant : getOrderedDependants(old)) {
+                if (!previous.containsKey(dependant.getId())) {
+                    throw new PluginLoadException("Dependant '%s' of plugin '%s' has to be replaced as well"
+                            .formatted(dependant.getId(), entry.getKey()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard plugins that were loaded, but are not registered (anymore).
+     * @param created The plugins, in load order.
+     */
+    private void discard(List<LoadedPlugin> created) {
+        for (int i = created.size() - 1; i >= 0; i--) {
+            LoadedPlugin loaded = created.get(i);
+
+            onPluginUnloading(loaded);
+            unloadInstance(loaded);
+            trackUnload(loaded);
+            loaded.remove();
+            onPluginUnloaded(loaded);
+        }
+    }
+
     public void ensurePluginCanBeLoaded(LoadablePlugin loadable) throws PluginLoadException {
         final var id = loadable.getManifest().id();
 
@@ -160,10 +609,203 @@ public class DistinctPluginContainer implements PluginContainer {
 
     @Override
     public void unloadPlugin(LoadedPlugin loadedPlugin) {
+        unloadPlugins(List.of(loadedPlugin));
+    }
+
+    /**
+     * Unload plugins together with their dependants, as a single batch.
+     * The {@link UnloadGcPolicy} is applied once, after the whole batch was unloaded.
+     *
+     * @param plugins The plugins to unload.
+     */
+    @Override
+    public void unloadPlugins(Collection<LoadedPlugin> plugins) {
+        int unloaded = 0;
+
         lock.lock();
 
+        try {
+            for (LoadedPlugin plugin : plugins) {
+                unloadWithDependants(plugin);
+            }
+
+            // batches nested in other locked operations are completed by the outermost operation
+            if (lock.getHoldCount() == 1) {
+                unloaded = batchUnloads;
+                batchUnloads = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (unloaded > 0) {
+            applyUnloadGcPolicy(unloaded);
+        }
+    }
+
+    /**
+     * Unload all plugins in a single pass, in reverse dependency order.
+     * With an {@link #setUnloadExecutor(Executor) unload executor}, independent plugins are unloaded in parallel.
+     * <p>
+     * Once the time budget is exhausted, the container stops waiting for {@link Plugin#unload()} and removes
+     * the remaining plugins without unloading them. A plugin that is unloading at that time is not interrupted;
+     * its class loader and those of its dependencies stay open, so that the unload can complete.
+     * The {@link #getUnloadTracker() unload tracker} reports these class loaders as leaked.
+     * The class loaders of all other plugins are closed at the end.
+     * </p>
+     *
+     * @param timeBudget The time to wait for the plugins to unload, or null to wait for all plugins.
+     */
+    @Override
+    public void unloadAll(@Nullable Duration timeBudget) {
+        final long start = System.nanoTime();
+        final long budget = timeBudget != null ? saturatedNanos(timeBudget) : Long.MAX_VALUE;
+        int unloaded = 0;
+
+        lock.lock();
+
+        try {
+            if (!awaitLoading(null, remainingNanos(start, budget))) {
+                logger.warn("Unloading all plugins while plugins are still loading");
+            }
+
+            // the class loaders are removed at once, so that each container is only updated once
+            removeBatch(List.copyOf(classLoaderContainers()), () -> unloadAllInternal(start, budget));
+
+            if (lock.getHoldCount() == 1) {
+                unloaded = batchUnloads;
+                batchUnloads = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (unloaded > 0) {
+            applyUnloadGcPolicy(unloaded);
+        }
+    }
+
+    private Set<ClassLoaderContainer> classLoaderContainers() {
+        if (classLoaderContainer != null) return Set.of(classLoaderContainer);
+
+        Set<ClassLoaderContainer> containers = new HashSet<>();
+
+        for (LoadedPlugin plugin : registry.plugins()) {
+            if (plugin instanceof JarLoadedPlugin jarPlugin) {
+                containers.add(jarPlugin.getClassLoaderContainer());
+            }
+        }
+
+        return containers;
+    }
+
+    private static void removeBatch(List<ClassLoaderContainer> containers, Runnable removals) {
+        if (containers.isEmpty()) {
+            removals.run();
+            return;
+        }
+
+        var rest = containers.subList(1, containers.size());
+        containers.get(0).removeBatch(() -> removeBatch(rest, removals));
+    }
+
+    private void unloadAllInternal(long start, long budget) {
+        final Executor executor = this.unloadExecutor;
+
+        // wait for concurrent parallel unloads
+        while (!unloading.isEmpty()) {
+            awaitUnloading();
+        }
+
+        final var levels = dependencyGraph.getLevels(null);
+        final Set<String> ids = executor != null ? markUnloading(levels) : Set.of();
+        /* plugins whose unload is still running, and their dependencies */
+        final Set<String> retained = new HashSet<>();
+
+        try {
+            // the deepest dependants first; plugins within a level do not depend on each other
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                List<LoadedPlugin> level = new ArrayList<>();
+
+                for (var node : levels.get(i)) {
+                    LoadedPlugin plugin = node.getObj();
+
+                    if (isPluginLoaded(plugin.getId())) {
+                        beginUnload(plugin);
+                        level.add(plugin);
+                    }
+                }
+
+                if (executor != null) {
+                    for (LoadedPlugin plugin : unloadLevel(level, executor, remainingNanos(start, budget))) {
+                        retainWithDependencies(plugin, retained);
+                    }
+                } else {
+                    for (LoadedPlugin plugin : level) {
+                        if (remainingNanos(start, budget) > 0) {
+                            unloadInstance(plugin);
+                        } else {
+                            logger.warn("Time budget exhausted, removing plugin '{}' without unloading it", plugin.getId());
+                        }
+                    }
+                }
+
+                for (LoadedPlugin plugin : level) {
+                    if (retained.contains(plugin.getId())) {
+                        // closing the class loader would break the running unload; the tracker reports the leak
+                        logger.warn("Plugin '{}' is still in use, leaving its class loader open", plugin.getId());
+                        finishUnload(plugin, false);
+                    } else {
+                        finishUnload(plugin);
+                    }
+                }
+            }
+        } finally {
+            unmarkUnloading(ids);
+        }
+    }
+
+    private void retainWithDependencies(LoadedPlugin plugin, Set<String> retained) {
+        if (!retained.add(plugin.getId())) return;
+
+        for (String dependency : plugin.getManifest().dependsOn()) {
+            LoadedPlugin loaded = registry.byId().get(dependency);
+
+            if (loaded != null) {
+                retainWithDependencies(loaded, retained);
+            }
+        }
+    }
+
+    private static long remainingNanos(long start, long budget) {
+        if (budget == Long.MAX_VALUE) return Long.MAX_VALUE;
+
+        return budget - (System.nanoTime() - start);
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return Math.max(0, duration.toNanos());
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? 0 : Long.MAX_VALUE;
+        }
+    }
+
+    private void unloadWithDependants(LoadedPlugin loadedPlugin) {
+        if (!isPluginLoaded(loadedPlugin.getId())) return;
+
+        awaitDependantLoading(loadedPlugin);
+
+        // the plugin might have been unloaded while waiting
         if (!isPluginLoaded(loadedPlugin.getId())) return;
 
+        final Executor executor = this.unloadExecutor;
+
+        if (executor != null) {
+            unloadWithDependantsParallel(loadedPlugin, executor);
+            return;
+        }
+
         final var dependants = getOrderedDependants(loadedPlugin);
         Collections.reverse(dependants);
 
@@ -172,22 +814,250 @@ public class DistinctPluginContainer implements PluginContainer {
         }
 
         unloadPluginInternal(loadedPlugin);
+    }
+
+    private void awaitDependantLoading(LoadedPlugin loadedPlugin) {
+        // dependants might have been registered while waiting, so check again until nothing was waited for
+        while (isPluginLoaded(loadedPlugin.getId())) {
+            Set<String> ids = getOrderedDependencies(Set.of(loadedPlugin)).stream()
+                    .map(LoadedPlugin::getId)
+                    .collect(Collectors.toSet());
+
+            if (!Collections.disjoint(ids, unloading)) {
+                awaitUnloading();
+                continue;
+            }
+
+            if (awaitLoading(ids, 0) || !awaitLoading(ids, Long.MAX_VALUE)) return;
+        }
+    }
+
+    private void awaitUnloading() {
+        if (unloadThread.get()) {
+            // the unload in progress waits for this thread
+            throw new IllegalStateException("Plugins that are being unloaded cannot be unloaded from Plugin.unload()");
+        }
+
+        settled.awaitUninterruptibly();
+    }
+
+    private void unloadWithDependantsParallel(LoadedPlugin loadedPlugin, Executor executor) {
+        var node = dependencyGraph.getNode(loadedPlugin.getId()).orElseThrow();
+        var levels = dependencyGraph.getLevels(Set.of(node));
+        var ids = markUnloading(levels);
+
+        try {
+            // the deepest dependants first; plugins within a level do not depend on each other
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                List<LoadedPlugin> level = new ArrayList<>();
+
+                for (var levelNode : levels.get(i)) {
+                    LoadedPlugin plugin = levelNode.getObj();
+
+                    if (isPluginLoaded(plugin.getId())) {
+                        beginUnload(plugin);
+                        level.add(plugin);
+                    }
+                }
+
+                unloadLevel(level, executor, Long.MAX_VALUE);
+
+                for (LoadedPlugin plugin : level) {
+                    finishUnload(plugin);
+                }
+            }
+        } finally {
+            unmarkUnloading(ids);
+        }
+    }
+
+    /**
+     * Mark the plugins of an unload operation, which releases the lock while unloading a level.
+     * Until they are unmarked, other operations on the plugins wait and their dependants cannot be loaded.
+     *
+     * @param levels The dependency levels of the plugins.
+     * @return The marked ids, or an empty set if the operation is nested and does not release the lock.
+     */
+    private Set<String> markUnloading(List<List<DAG.Node<LoadedPlugin>>> levels) {
+        if (lock.getHoldCount() > 1) return Set.of();
+
+        final Set<String> ids = new HashSet<>();
+
+        for (var level : levels) {
+            for (var node : level) {
+                ids.add(node.getObj().getId());
+            }
+        }
+
+        unloading.addAll(ids);
+
+        return ids;
+    }
+
+    private void unmarkUnloading(Set<String> ids) {
+        if (ids.isEmpty()) return;
+
+        unloading.removeAll(ids);
+        settled.signalAll();
+    }
+
+    /**
+     * Unload the plugin instances of a level on the executor, without holding the lock,
+     * so that the plugins can query the container from {@link Plugin#unload()}.
+     * The lock is held again when this method returns.
+     *
+     * @return The plugins whose unload is still running, because the timeout elapsed.
+     */
+    private List<LoadedPlugin> unloadLevel(List<LoadedPlugin> level, Executor executor, long timeoutNanos) {
+        if (lock.getHoldCount() > 1) {
+            // nested in another locked operation, which does not expect concurrent changes; unload on this thread
+            return unloadInstances(level, Runnable::run, timeoutNanos);
+        }
 
         lock.unlock();
+        unloadThread.set(true);  // plugins might be unloaded on this thread, too
+
+        try {
+            return unloadInstances(level, executor, timeoutNanos);
+        } finally {
+            unloadThread.remove();
+            lock.lock();
+        }
+    }
+
+    /**
+     * Call {@link Plugin#unload()} of plugins on an executor.
+     *
+     * @return The plugins whose unload is still running, because the timeout elapsed.
+     */
+    private List<LoadedPlugin> unloadInstances(List<LoadedPlugin> plugins, Executor executor, long timeoutNanos) {
+        if (timeoutNanos <= 0) {
+            plugins.forEach(plugin -> logger.warn("Time budget exhausted, removing plugin '{}' without unloading it",
+                    plugin.getId()));
+            return List.of();
+        }
+
+        if (plugins.size() == 1 && timeoutNanos == Long.MAX_VALUE) {
+            unloadInstance(plugins.get(0));
+            return List.of();
+        }
+
+        Map<LoadedPlugin, CompletableFuture<Void>> unloads = new LinkedHashMap<>();
+
+        for (LoadedPlugin plugin : plugins) {
+            try {
+                unloads.put(plugin, CompletableFuture.runAsync(() -> {
+                    final boolean marked = unloadThread.get();
+                    unloadThread.set(true);
+
+                    try {
+                        unloadInstance(plugin);
+                    } finally {
+                        if (!marked) unloadThread.remove();
+                    }
+                }, executor));
+            } catch (RejectedExecutionException e) {
+                unloadInstance(plugin);
+            }
+        }
+
+        // unloadInstance does not throw
+        var all = CompletableFuture.allOf(unloads.values().toArray(CompletableFuture[]::new));
+
+        if (timeoutNanos == Long.MAX_VALUE) {
+            all.join();
+            return List.of();
+        }
+
+        try {
+            all.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            return List.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for plugins to unload");
+        } catch (TimeoutException e) {
+            logger.warn("Time budget exhausted, continuing without waiting for {} plugin(s) to unload",
+                    unloads.values().stream().filter(unload -> !unload.isDone()).count());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+
+        List<LoadedPlugin> running = new ArrayList<>();
+
+        unloads.forEach((plugin, unload) -> {
+            if (!unload.isDone()) running.add(plugin);
+        });
+
+        return running;
+    }
+
+    /**
+     * Set the policy that decides whether a garbage collection is requested after plugins were unloaded.
+     * @param unloadGcPolicy The policy. {@link UnloadGcPolicy#NEVER} by default.
+     */
+    public void setUnloadGcPolicy(UnloadGcPolicy unloadGcPolicy) {
+        this.unloadGcPolicy = Objects.requireNonNull(unloadGcPolicy);
+    }
+
+    /**
+     * Get the result of the last garbage collection requested by the unload gc policy.
+     * @return The result, or an empty optional if no collection was requested yet.
+     */
+    public Optional<UnloadGcResult> getLastUnloadGc() {
+        return Optional.ofNullable(lastUnloadGc);
+    }
+
+    private void applyUnloadGcPolicy(int unloaded) {
+        final long metaspaceBefore = metaspaceUsed();
+
+        if (!unloadGcPolicy.shouldCollect(metaspaceBefore)) return;
+
+        final long start = System.nanoTime();
+        System.gc();
+        final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+
+        var result = new UnloadGcResult(unloaded, duration, metaspaceBefore, metaspaceUsed());
+        lastUnloadGc = result;
+
+        logger.info("Garbage collection after unloading {} plugin(s) took {} ms and freed {} KiB of metaspace",
+                unloaded, duration.toMillis(), result.metaspaceFreed() / 1024);
+    }
+
+    private static long metaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+
+        return -1;
     }
 
     private void unloadPluginInternal(LoadedPlugin loadedPlugin) {
-        final var id = loadedPlugin.getId();
+        if (!isPluginLoaded(loadedPlugin.getId())) return;
 
-        if (!isPluginLoaded(id)) return;
+        beginUnload(loadedPlugin);
+        unloadInstance(loadedPlugin);
+        finishUnload(loadedPlugin);
+    }
 
+    private void beginUnload(LoadedPlugin loadedPlugin) {
         onPluginUnloading(loadedPlugin);
+        batchUnloads++;
 
-        // remove the plugin; separate into standalone method so that no references remain on the stack
-        removePlugin(loadedPlugin);
+        // stop preloading classes of the plugin; its class loader is about to be closed
+        var preload = preloads.remove(loadedPlugin.getId());
+        if (preload != null) preload.cancel(false);
+    }
 
-        // manually invoke garbage collection; plugin classes are freed here, if they unregistered properly
-        System.gc();
+    private void finishUnload(LoadedPlugin loadedPlugin) {
+        finishUnload(loadedPlugin, true);
+    }
+
+    private void finishUnload(LoadedPlugin loadedPlugin, boolean release) {
+        // separate into standalone methods so that no references remain on the stack
+        trackUnload(loadedPlugin);
+        removePlugin(loadedPlugin, release);
 
         onPluginUnloaded(loadedPlugin);
     }
@@ -210,20 +1080,83 @@ public class DistinctPluginContainer implements PluginContainer {
         logger.info("Plugin '{}' unloaded.", plugin.getManifest().id());
     }
 
-    private void removePlugin(LoadedPlugin loadedPlugin) {
+    private void trackUnload(LoadedPlugin loadedPlugin) {
+        Plugin plugin = loadedPlugin.getPlugin();
+        if (plugin == null) return;
+
+        // plugin classes are freed by the next regular garbage collection, if they unregistered properly
+        if (plugin.getClass().getClassLoader() instanceof PluginClassLoader classLoader) {
+            unloadTracker.track(loadedPlugin.getId(), classLoader);
+        }
+    }
+
+    private void unloadInstance(LoadedPlugin loadedPlugin) {
         Plugin plugin = loadedPlugin.getPlugin();  // reference to the foreign plugin class
 
+        // the plugin might have been removed already, if the time budget was exhausted
+        if (plugin == null) return;
+
         try {
             plugin.unload();
         } catch (Throwable t) {
             logger.error("Error unloading plugin, unloading anyways...", t);
         }
+    }
 
+    private void removePlugin(LoadedPlugin loadedPlugin, boolean release) {
         var id = loadedPlugin.getManifest().id();
 
-        loadedPlugins.remove(id);
+        registry = registry.without(id);
         dependencyGraph.removeNode(id);
 
-        loadedPlugin.remove();  // remove reference to the foreign plugin instance to enable gc
+        if (release) {
+            loadedPlugin.remove();  // remove reference to the foreign plugin instance to enable gc
+        }
+    }
+
+    /**
+     * A plugin that is being loaded.
+     *
+     * @param dependsOn The ids of its dependencies.
+     * @param thread    The thread that loads the plugin.
+     */
+    private record Loading(Set<String> dependsOn, Thread thread) {}
+
+    /**
+     * An immutable snapshot of the loaded plugins.
+     */
+    private record Registry(long version, Map<String, LoadedPlugin> byId, Set<LoadedPlugin> plugins) {
+
+        static final Registry EMPTY = new Registry(0, Map.of(), Set.of());
+
+        Registry with(LoadedPlugin plugin) {
+            Map<String, LoadedPlugin> byId = new HashMap<>(this.byId);
+            byId.put(plugin.getId(), plugin);
+
+            return of(version + 1, byId);
+        }
+
+        Registry with(Collection<LoadedPlugin> plugins) {
+            Map<String, LoadedPlugin> byId = new HashMap<>(this.byId);
+
+            for (LoadedPlugin plugin : plugins) {
+                byId.put(plugin.getId(), plugin);
+            }
+
+            return of(version + 1, byId);
+        }
+
+        Registry without(String id) {
+            if (!byId.containsKey(id)) return this;
+
+            Map<String, LoadedPlugin> byId = new HashMap<>(this.byId);
+            byId.remove(id);
+
+            return of(version + 1, byId);
+        }
+
+        private static Registry of(long version, Map<String, LoadedPlugin> byId) {
+            return new Registry(version, Map.copyOf(byId), Set.copyOf(byId.values()));
+        }
     }
 }
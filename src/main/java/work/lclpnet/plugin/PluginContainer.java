@@ -2,7 +2,11 @@ package work.lclpnet.plugin;
 
 import work.lclpnet.plugin.load.LoadablePlugin;
 import work.lclpnet.plugin.load.LoadedPlugin;
+import work.lclpnet.plugin.load.PluginLoadException;
 
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -15,10 +19,53 @@ public interface PluginContainer {
 
     Optional<LoadedPlugin> getPlugin(String id);
 
+    /**
+     * Load a plugin.
+     * The plugin is visible to {@link #getPlugin(String)} and {@link #isPluginLoaded(String)} while its
+     * {@link Plugin#load()} method runs. If it fails to load, it is removed again.
+     *
+     * @param plugin The plugin to load.
+     * @return The loaded plugin, or an empty optional if the plugin threw an error on load.
+     */
     Optional<LoadedPlugin> loadPlugin(LoadablePlugin plugin);
 
     void unloadPlugin(LoadedPlugin plugin);
 
+    /**
+     * Unload multiple plugins, e.g. on shutdown or reload.
+     * Implementations may treat the plugins as a batch, to perform expensive cleanup only once.
+     *
+     * @param plugins The plugins to unload.
+     */
+    default void unloadPlugins(Collection<LoadedPlugin> plugins) {
+        plugins.forEach(this::unloadPlugin);
+    }
+
+    /**
+     * Unload all plugins, e.g. on shutdown.
+     * Implementations may stop waiting for {@link Plugin#unload()} once the time budget is exhausted;
+     * the remaining plugins are removed nevertheless.
+     *
+     * @param timeBudget The time to wait for the plugins to unload, or null to wait for all plugins.
+     */
+    default void unloadAll(@Nullable Duration timeBudget) {
+        unloadPlugins(getPlugins());
+    }
+
+    /**
+     * Replace loaded plugins with new versions, which are loaded next to the old versions.
+     * The old versions stay active, until all new versions have loaded; they are unloaded after the swap.
+     *
+     * @param replacements The new plugin versions, in dependency order.
+     *                     They have to include all dependants of the replaced plugins.
+     * @return The new versions, or an empty optional if a new version failed to load and the old versions were kept.
+     * @throws PluginLoadException If the plugins cannot be replaced.
+     * @throws UnsupportedOperationException If the container does not support side-by-side reloads.
+     */
+    default Optional<List<LoadedPlugin>> replacePlugins(List<? extends LoadablePlugin> replacements) {
+        throw new UnsupportedOperationException("Side-by-side reloads are not supported by this container");
+    }
+
     List<LoadedPlugin> getOrderedDependants(LoadedPlugin plugin);
 
     List<LoadedPlugin> getOrderedDependencies(Set<LoadedPlugin> plugins);
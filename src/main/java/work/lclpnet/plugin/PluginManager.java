@@ -4,6 +4,7 @@ import work.lclpnet.plugin.load.LoadedPlugin;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface PluginManager {
 
@@ -24,4 +25,33 @@ public interface PluginManager {
     Set<LoadedPlugin> getPlugins();
 
     void shutdown();
+
+    /**
+     * Load a plugin without blocking the caller.
+     * Operations that affect the same plugin ids are executed in the order they were requested.
+     *
+     * @param src Plugin source. E.g. a {@link java.nio.file.Path}.
+     * @return A future that completes with the result of {@link #loadPlugin(Object)}.
+     */
+    CompletableFuture<Optional<LoadedPlugin>> loadPluginAsync(Object src);
+
+    /**
+     * Unload a plugin and its dependants without blocking the caller.
+     *
+     * @param plugin The plugin to unload.
+     * @return A future that completes when the plugin was unloaded.
+     */
+    CompletableFuture<Void> unloadPluginAsync(LoadedPlugin plugin);
+
+    default CompletableFuture<Void> reloadPluginAsync(LoadedPlugin loaded) {
+        return reloadPluginsAsync(Set.of(loaded));
+    }
+
+    /**
+     * Reload plugins and their dependants without blocking the caller.
+     *
+     * @param loaded The plugins to reload.
+     * @return A future that completes when the plugins were reloaded.
+     */
+    CompletableFuture<Void> reloadPluginsAsync(Set<LoadedPlugin> loaded);
 }
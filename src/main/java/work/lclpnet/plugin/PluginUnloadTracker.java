@@ -0,0 +1,230 @@
+package work.lclpnet.plugin;
+
+import org.slf4j.Logger;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies that the class loaders of unloaded plugins are garbage collected, without forcing garbage collections.
+ * <p>
+ * Each class loader is tracked with a phantom reference. A daemon thread waits for the references to be enqueued
+ * and reports collected class loaders. Class loaders that are still reachable after the leak timeout are reported
+ * as leaked; they are still reported, if they are collected later.
+ * </p>
+ */
+public class PluginUnloadTracker {
+
+    public static final Duration DEFAULT_LEAK_TIMEOUT = Duration.ofMinutes(1);
+
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+    /* the phantom references need to stay reachable themselves, until they are enqueued */
+    private final Set<TrackedLoader> pending = ConcurrentHashMap.newKeySet();
+    private final Duration leakTimeout;
+    private final Listener listener;
+    private boolean running = false;
+
+    public PluginUnloadTracker(Logger logger) {
+        this(DEFAULT_LEAK_TIMEOUT, Listener.logging(logger));
+    }
+
+    /**
+     * Creates a new unload tracker.
+     *
+     * @param leakTimeout The time after which a class loader that was not collected is reported as leaked.
+     * @param listener    A listener that is notified about collected and leaked class loaders, from the tracker thread.
+     */
+    public PluginUnloadTracker(Duration leakTimeout, Listener listener) {
+        if (leakTimeout.isNegative()) throw new IllegalArgumentException("Leak timeout must not be negative");
+
+        this.leakTimeout = leakTimeout;
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Track the class loader of an unloaded plugin.
+     * The caller should not keep a reference to the class loader afterwards.
+     *
+     * @param pluginId    The id of the unloaded plugin.
+     * @param classLoader The class loader of the plugin.
+     * @return A future that completes when the class loader was collected.
+     */
+    public CompletableFuture<Void> track(String pluginId, ClassLoader classLoader) {
+        var tracked = new TrackedLoader(pluginId, classLoader, queue, System.nanoTime() + leakTimeout.toNanos());
+        pending.add(tracked);
+
+        synchronized (this) {
+            if (!running) {
+                running = true;
+
+                Thread thread = new Thread(this::run, "Plugin-Unload-Tracker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        return tracked.collected;
+    }
+
+    /**
+     * Get the ids of unloaded plugins whose class loaders were not collected yet.
+     * @return The plugin ids. A plugin id might occur once, even if multiple of its class loaders are pending.
+     */
+    public Set<String> getPending() {
+        Set<String> ids = new HashSet<>();
+
+        for (TrackedLoader tracked : pending) {
+            ids.add(tracked.pluginId);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Get the ids of unloaded plugins whose class loaders are reported as leaked and were not collected yet.
+     * @return The plugin ids.
+     */
+    public Set<String> getLeaked() {
+        Set<String> ids = new HashSet<>();
+
+        for (TrackedLoader tracked : pending) {
+            if (tracked.leaked) ids.add(tracked.pluginId);
+        }
+
+        return ids;
+    }
+
+    private void run() {
+        while (true) {
+            Reference<? extends ClassLoader> ref;
+
+            try {
+                ref = queue.remove(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextDeadline() - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    running = false;
+                }
+                return;
+            }
+
+            while (ref != null) {
+                collected((TrackedLoader) ref);
+                ref = queue.poll();
+            }
+
+            reportLeaks();
+
+            synchronized (this) {
+                // tracking after this check starts a new thread
+                if (pending.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    private long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        long now = System.nanoTime();
+
+        for (TrackedLoader tracked : pending) {
+            if (!tracked.leaked) {
+                next = Math.min(next, tracked.deadline);
+            }
+        }
+
+        // wait for leaked loaders with the leak timeout as interval
+        return next == Long.MAX_VALUE ? now + Math.max(leakTimeout.toNanos(), TimeUnit.SECONDS.toNanos(1)) : next;
+    }
+
+    private void collected(TrackedLoader tracked) {
+        pending.remove(tracked);
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - tracked.unloadedAt);
+
+        try {
+            listener.onCollected(tracked.pluginId, elapsed, tracked.leaked);
+        } finally {
+            tracked.collected.complete(null);
+        }
+    }
+
+    private void reportLeaks() {
+        long now = System.nanoTime();
+
+        for (TrackedLoader tracked : pending) {
+            if (tracked.leaked || now - tracked.deadline < 0) continue;
+
+            tracked.leaked = true;
+            listener.onLeaked(tracked.pluginId, Duration.ofNanos(now - tracked.unloadedAt));
+        }
+    }
+
+    private static class TrackedLoader extends PhantomReference<ClassLoader> {
+
+        final String pluginId;
+        final long unloadedAt = System.nanoTime();
+        final long deadline;
+        final CompletableFuture<Void> collected = new CompletableFuture<>();
+        volatile boolean leaked = false;
+
+        TrackedLoader(String pluginId, ClassLoader classLoader, ReferenceQueue<ClassLoader> queue, long deadline) {
+            super(classLoader, queue);
+            this.pluginId = pluginId;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * A listener for the results of the unload tracking.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the class loader of an unloaded plugin was garbage collected.
+         *
+         * @param pluginId The plugin id.
+         * @param elapsed  The time between the unload and the collection.
+         * @param leaked   Whether the class loader was reported as leaked before.
+         */
+        void onCollected(String pluginId, Duration elapsed, boolean leaked);
+
+        /**
+         * Called when the class loader of an unloaded plugin was not collected within the leak timeout.
+         *
+         * @param pluginId The plugin id.
+         * @param elapsed  The time since the unload.
+         */
+        void onLeaked(String pluginId, Duration elapsed);
+
+        static Listener logging(Logger logger) {
+            return new Listener() {
+                @Override
+                public void onCollected(String pluginId, Duration elapsed, boolean leaked) {
+                    if (leaked) {
+                        logger.info("Plugin '{}' was garbage collected after {} ms; it was reported as leaked before",
+                                pluginId, elapsed.toMillis());
+                    } else {
+                        logger.debug("Plugin '{}' was garbage collected after {} ms", pluginId, elapsed.toMillis());
+                    }
+                }
+
+                @Override
+                public void onLeaked(String pluginId, Duration elapsed) {
+                    logger.warn("Plugin '{}' was not garbage collected {} ms after it was unloaded. " +
+                            "Something might still reference its classes", pluginId, elapsed.toMillis());
+                }
+            };
+        }
+    }
+}
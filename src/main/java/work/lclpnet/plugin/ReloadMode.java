@@ -0,0 +1,15 @@
+package work.lclpnet.plugin;
+
+/**
+ * How a {@link SimplePluginManager} reloads plugins.
+ */
+public enum ReloadMode {
+    /** Unload the plugins and their dependants, then load them again. */
+    UNLOAD_FIRST,
+    /**
+     * Load the new versions next to the old ones and swap them atomically, so that the plugins stay available.
+     * The old versions remain loaded, if a new version fails to load.
+     * @see PluginContainer#replacePlugins(java.util.List)
+     */
+    SIDE_BY_SIDE
+}
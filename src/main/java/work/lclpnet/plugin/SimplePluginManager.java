@@ -5,20 +5,61 @@ import work.lclpnet.plugin.load.LoadablePlugin;
 import work.lclpnet.plugin.load.LoadedPlugin;
 import work.lclpnet.plugin.load.PluginLoadException;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Optional;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class SimplePluginManager implements PluginManager {
 
     private final PluginDiscoveryService discoveryService;
     private final PluginContainer pluginContainer;
     private volatile boolean acceptNewPlugins = true;
+    @Nullable
+    private volatile Duration shutdownTimeBudget = null;
+    private volatile ReloadMode reloadMode = ReloadMode.UNLOAD_FIRST;
+    private final Executor executor;
+    /* whether the executor was created by this manager and has to be shut down with it */
+    private final boolean ownsExecutor;
+    /* the last pending async operation per plugin id, guarded by itself */
+    private final Map<String, CompletableFuture<?>> pending = new HashMap<>();
+    /* the last pending async discovery, guarded by pending */
+    private CompletableFuture<?> lastDiscovery = CompletableFuture.completedFuture(null);
+    /* the futures returned for loads that needed a discovery and are pending, guarded by pending */
+    private final Set<CompletableFuture<?>> discoveredLoads = new HashSet<>();
 
+    /**
+     * Creates a plugin manager that runs async operations on its own pool of daemon threads.
+     *
+     * @param discoveryService The discovery service to find plugins with.
+     * @param pluginContainer  The container to load the plugins into.
+     */
     public SimplePluginManager(PluginDiscoveryService discoveryService, PluginContainer pluginContainer) {
+        this(discoveryService, pluginContainer, createPool(), true);
+    }
+
+    /**
+     * Creates a new plugin manager.
+     *
+     * @param discoveryService The discovery service to find plugins with.
+     * @param pluginContainer  The container to load the plugins into.
+     * @param executor         The executor to run async operations on.
+     */
+    public SimplePluginManager(PluginDiscoveryService discoveryService, PluginContainer pluginContainer,
+                               Executor executor) {
+        this(discoveryService, pluginContainer, executor, false);
+    }
+
+    private SimplePluginManager(PluginDiscoveryService discoveryService, PluginContainer pluginContainer,
+                                Executor executor, boolean ownsExecutor) {
         this.discoveryService = discoveryService;
         this.pluginContainer = pluginContainer;
+        this.executor = Objects.requireNonNull(executor);
+        this.ownsExecutor = ownsExecutor;
     }
 
     /**
@@ -29,26 +70,24 @@ public class SimplePluginManager implements PluginManager {
     public Optional<LoadedPlugin> loadPlugin(Object src) {
         if (!acceptNewPlugins) return Optional.empty();
 
-        LoadablePlugin loadable;
+        return pluginContainer.loadPlugin(discover(src));
+    }
 
-        if (src instanceof LoadablePlugin) {
-            loadable = (LoadablePlugin) src;
-        } else {
-            Optional<? extends LoadablePlugin> plugin;
-            try {
-                plugin = discoveryService.discoverFrom(src);
-            } catch (IOException e) {
-                throw new PluginLoadException("Discovering plugin failed", e);
-            }
+    private LoadablePlugin discover(Object src) {
+        if (src instanceof LoadablePlugin loadable) return loadable;
 
-            if (plugin.isEmpty()) {
-                throw new PluginLoadException("Could not find plugin at %s".formatted(src));
-            }
+        Optional<? extends LoadablePlugin> plugin;
+        try {
+            plugin = discoveryService.discoverFrom(src);
+        } catch (IOException e) {
+            throw new PluginLoadException("Discovering plugin failed", e);
+        }
 
-            loadable = plugin.get();
+        if (plugin.isEmpty()) {
+            throw new PluginLoadException("Could not find plugin at %s".formatted(src));
         }
 
-        return pluginContainer.loadPlugin(loadable);
+        return plugin.get();
     }
 
     @Override
@@ -75,13 +114,24 @@ public class SimplePluginManager implements PluginManager {
         reloadPlugins(Set.of(loaded));
     }
 
+    /**
+     * Set how plugins are reloaded.
+     * @param reloadMode The reload mode. {@link ReloadMode#UNLOAD_FIRST} by default.
+     */
+    public void setReloadMode(ReloadMode reloadMode) {
+        this.reloadMode = Objects.requireNonNull(reloadMode);
+    }
+
     @Override
     public void reloadPlugins(Set<LoadedPlugin> loaded) {
+        if (reloadMode == ReloadMode.SIDE_BY_SIDE) {
+            reloadSideBySide(loaded);
+            return;
+        }
+
         var dependants = pluginContainer.getOrderedDependencies(loaded);
 
-        for (var plugin : dependants) {
-            unloadPlugin(plugin);
-        }
+        pluginContainer.unloadPlugins(dependants);
 
         // dependency order is kept intact, because dependants is ordered accordingly
         for (var plugin : dependants) {
@@ -89,6 +139,20 @@ public class SimplePluginManager implements PluginManager {
         }
     }
 
+    private void reloadSideBySide(Set<LoadedPlugin> loaded) {
+        if (!acceptNewPlugins) return;
+
+        var dependants = pluginContainer.getOrderedDependencies(loaded);
+        List<LoadablePlugin> replacements = new ArrayList<>(dependants.size());
+
+        // discover all new versions first; the old versions stay loaded if discovery fails
+        for (var plugin : dependants) {
+            replacements.add(discover(plugin.getSource()));
+        }
+
+        pluginContainer.replacePlugins(replacements);
+    }
+
     @Override
     public boolean isPluginLoaded(String identifier) {
         return pluginContainer.isPluginLoaded(identifier);
@@ -99,9 +163,197 @@ public class SimplePluginManager implements PluginManager {
         return pluginContainer.getPlugins();
     }
 
+    /**
+     * Set the time to wait on shutdown, for pending async operations and for the plugins to unload.
+     * @param shutdownTimeBudget The time budget, or null to wait for all plugins. Null by default.
+     */
+    public void setShutdownTimeBudget(@Nullable Duration shutdownTimeBudget) {
+        this.shutdownTimeBudget = shutdownTimeBudget;
+    }
+
+    /**
+     * Shut down the plugin manager.
+     * Pending async operations are completed first, so that no plugin is loaded after all plugins were unloaded.
+     * Then, all plugins are unloaded. The thread pool of the manager is shut down, if the manager created it.
+     */
     @Override
     public void shutdown() {
         acceptNewPlugins = false;
-        pluginContainer.getPlugins().forEach(pluginContainer::unloadPlugin);
+
+        final Duration budget = shutdownTimeBudget;
+        final long deadline = budget != null ? deadline(budget) : Long.MAX_VALUE;
+
+        awaitPending(deadline);
+
+        // the remaining budget is left for the plugins to unload
+        pluginContainer.unloadAll(deadline == Long.MAX_VALUE ? budget
+                : Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+
+        if (ownsExecutor && executor instanceof ExecutorService service) {
+            service.shutdown();
+        }
+    }
+
+    private static long deadline(Duration budget) {
+        try {
+            return Math.addExact(System.nanoTime(), budget.toNanos());
+        } catch (ArithmeticException e) {
+            return budget.isNegative() ? System.nanoTime() : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Wait for pending async operations, including the operations they submit while waiting.
+     * @param deadline The {@link System#nanoTime()} to stop waiting at, or {@link Long#MAX_VALUE} to wait indefinitely.
+     */
+    private void awaitPending(long deadline) {
+        while (true) {
+            final CompletableFuture<?>[] futures;
+
+            synchronized (pending) {
+                List<CompletableFuture<?>> unfinished = new ArrayList<>(pending.values());
+                unfinished.add(lastDiscovery);
+                // the returned futures complete after the loads they wrap, so they are awaited as well
+                unfinished.addAll(discoveredLoads);
+                unfinished.removeIf(CompletableFuture::isDone);
+
+                futures = unfinished.toArray(CompletableFuture[]::new);
+            }
+
+            if (futures.length == 0) return;
+
+            // failed operations do not matter here
+            var all = CompletableFuture.allOf(futures).handle((res, err) -> null);
+
+            try {
+                if (deadline == Long.MAX_VALUE) {
+                    all.join();
+                } else {
+                    all.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (TimeoutException e) {
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<LoadedPlugin>> loadPluginAsync(Object src) {
+        if (src instanceof LoadablePlugin loadable) {
+            return loadAsync(loadable);
+        }
+
+        synchronized (pending) {
+            // the plugin id is only known after discovery. Discoveries run one after another,
+            // so that loads are chained in the order they were requested
+            var discovery = lastDiscovery.handle((res, err) -> null)
+                    .thenApplyAsync(nil -> loadAsync(discover(src)), executor);
+
+            lastDiscovery = discovery;
+
+            CompletableFuture<Optional<LoadedPlugin>> load = discovery.thenCompose(future -> future);
+            discoveredLoads.add(load);
+
+            load.whenComplete((res, err) -> {
+                synchronized (pending) {
+                    discoveredLoads.remove(load);
+                }
+            });
+
+            return load;
+        }
+    }
+
+    private CompletableFuture<Optional<LoadedPlugin>> loadAsync(LoadablePlugin loadable) {
+        var manifest = loadable.getManifest();
+
+        Set<String> ids = new HashSet<>(manifest.dependsOn());
+        ids.add(manifest.id());
+
+        return submit(ids, () -> loadPlugin(loadable));
+    }
+
+    @Override
+    public CompletableFuture<Void> unloadPluginAsync(LoadedPlugin plugin) {
+        return submit(affectedIds(Set.of(plugin)), () -> {
+            unloadPlugin(plugin);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> reloadPluginsAsync(Set<LoadedPlugin> loaded) {
+        return submit(affectedIds(loaded), () -> {
+            reloadPlugins(loaded);
+            return null;
+        });
+    }
+
+    private Set<String> affectedIds(Set<LoadedPlugin> plugins) {
+        Set<String> ids = new HashSet<>();
+
+        for (LoadedPlugin plugin : plugins) {
+            ids.add(plugin.getId());
+        }
+
+        try {
+            for (LoadedPlugin dependant : pluginContainer.getOrderedDependencies(plugins)) {
+                ids.add(dependant.getId());
+            }
+        } catch (NoSuchElementException e) {
+            // a plugin is no longer loaded; its dependants were unloaded together with it
+        }
+
+        return ids;
+    }
+
+    /**
+     * Run an action on the executor, after all pending operations on the given plugin ids have completed.
+     * Failed operations do not prevent later operations from running.
+     *
+     * @param ids    The ids of the plugins affected by the action.
+     * @param action The action.
+     * @return A future that completes with the result of the action.
+     */
+    private <T> CompletableFuture<T> submit(Set<String> ids, Supplier<T> action) {
+        synchronized (pending) {
+            var previous = ids.stream()
+                    .map(pending::get)
+                    .filter(Objects::nonNull)
+                    .toArray(CompletableFuture[]::new);
+
+            CompletableFuture<T> future = CompletableFuture.allOf(previous)
+                    .handle((res, err) -> null)
+                    .thenApplyAsync(nil -> action.get(), executor);
+
+            for (String id : ids) {
+                pending.put(id, future);
+            }
+
+            future.whenComplete((res, err) -> {
+                synchronized (pending) {
+                    for (String id : ids) {
+                        pending.remove(id, future);
+                    }
+                }
+            });
+
+            return future;
+        }
+    }
+
+    private static ExecutorService createPool() {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Plugin-Manager-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
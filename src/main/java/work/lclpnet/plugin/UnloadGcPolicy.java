@@ -0,0 +1,54 @@
+package work.lclpnet.plugin;
+
+/**
+ * Decides whether a garbage collection is requested after a batch of plugins was unloaded.
+ * <p>
+ * Unloaded plugin classes are freed by regular garbage collections anyway.
+ * Requesting a collection after a batch makes the freed metaspace available immediately, e.g. before the plugins are
+ * loaded again on reload, at the cost of a full collection.
+ * </p>
+ *
+ * @param mode               When to request a collection.
+ * @param metaspaceThreshold The metaspace usage in bytes above which a collection is requested,
+ *                           for {@link Mode#PER_BATCH_ABOVE_METASPACE_THRESHOLD}.
+ */
+public record UnloadGcPolicy(Mode mode, long metaspaceThreshold) {
+
+    public static final UnloadGcPolicy NEVER = new UnloadGcPolicy(Mode.NEVER, 0);
+    public static final UnloadGcPolicy PER_BATCH = new UnloadGcPolicy(Mode.PER_BATCH, 0);
+
+    public UnloadGcPolicy {
+        if (metaspaceThreshold < 0) throw new IllegalArgumentException("Metaspace threshold must not be negative");
+    }
+
+    /**
+     * Create a policy that requests a collection after a batch, if the metaspace usage exceeds a threshold.
+     *
+     * @param thresholdBytes The metaspace usage threshold in bytes.
+     * @return The policy.
+     */
+    public static UnloadGcPolicy perBatchAboveMetaspace(long thresholdBytes) {
+        return new UnloadGcPolicy(Mode.PER_BATCH_ABOVE_METASPACE_THRESHOLD, thresholdBytes);
+    }
+
+    /**
+     * Check whether a collection should be requested.
+     *
+     * @param metaspaceUsed The current metaspace usage in bytes, or a negative value if it is unknown.
+     * @return True, if a collection should be requested.
+     */
+    public boolean shouldCollect(long metaspaceUsed) {
+        return switch (mode) {
+            case NEVER -> false;
+            case PER_BATCH -> true;
+            // without a metaspace measurement, the threshold cannot be exceeded
+            case PER_BATCH_ABOVE_METASPACE_THRESHOLD -> metaspaceUsed > metaspaceThreshold;
+        };
+    }
+
+    public enum Mode {
+        NEVER,
+        PER_BATCH,
+        PER_BATCH_ABOVE_METASPACE_THRESHOLD
+    }
+}
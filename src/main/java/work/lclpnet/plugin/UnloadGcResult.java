@@ -0,0 +1,24 @@
+package work.lclpnet.plugin;
+
+import java.time.Duration;
+
+/**
+ * The outcome of a garbage collection that was requested after unloading plugins.
+ *
+ * @param unloaded        The number of plugins unloaded in the batch.
+ * @param duration        The time the collection took.
+ * @param metaspaceBefore The metaspace usage in bytes before the collection, or -1 if unknown.
+ * @param metaspaceAfter  The metaspace usage in bytes after the collection, or -1 if unknown.
+ */
+public record UnloadGcResult(int unloaded, Duration duration, long metaspaceBefore, long metaspaceAfter) {
+
+    /**
+     * Get the amount of metaspace freed by the collection.
+     * @return The freed metaspace in bytes, or -1 if unknown.
+     */
+    public long metaspaceFreed() {
+        if (metaspaceBefore < 0 || metaspaceAfter < 0) return -1;
+
+        return Math.max(0, metaspaceBefore - metaspaceAfter);
+    }
+}
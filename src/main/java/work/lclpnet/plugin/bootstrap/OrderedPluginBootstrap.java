@@ -3,14 +3,17 @@ package work.lclpnet.plugin.bootstrap;
 import work.lclpnet.plugin.PluginContainer;
 import work.lclpnet.plugin.discover.PluginDiscoveryService;
 import work.lclpnet.plugin.graph.DAG;
+import work.lclpnet.plugin.load.ClassListCache;
 import work.lclpnet.plugin.load.LoadablePlugin;
 import work.lclpnet.plugin.load.PluginLoadException;
+import work.lclpnet.plugin.load.UrlLoadablePlugin;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * A plugin bootstrap for a single plugin discovery service
@@ -19,10 +22,40 @@ public class OrderedPluginBootstrap implements PluginBootstrap {
 
     private final PluginDiscoveryService pluginDiscoveryService;
     private final PluginContainer pluginContainer;
+    @Nullable
+    private final ClassListCache classListCache;
+    @Nullable
+    private Executor executor = null;
 
     public OrderedPluginBootstrap(PluginDiscoveryService pluginDiscoveryService, PluginContainer pluginContainer) {
+        this(pluginDiscoveryService, pluginContainer, null);
+    }
+
+    /**
+     * Creates a new plugin bootstrap.
+     *
+     * @param pluginDiscoveryService The discovery service to find plugins with.
+     * @param pluginContainer        The container to load the plugins into.
+     * @param classListCache         An optional class list cache. Plugins without a class list record the classes they
+     *                               load during the bootstrap, plugins with a class list preload those classes.
+     */
+    public OrderedPluginBootstrap(PluginDiscoveryService pluginDiscoveryService, PluginContainer pluginContainer,
+                                  @Nullable ClassListCache classListCache) {
         this.pluginDiscoveryService = pluginDiscoveryService;
         this.pluginContainer = pluginContainer;
+        this.classListCache = classListCache;
+    }
+
+    /**
+     * Load plugins in parallel. Each plugin is loaded on the executor, as soon as all of its dependencies have loaded.
+     * On Java 21 and later, {@code Executors.newVirtualThreadPerTaskExecutor()} can be used to load every plugin on its
+     * own virtual thread.
+     * The plugin container has to support concurrent loads, like the {@link work.lclpnet.plugin.DistinctPluginContainer}.
+     *
+     * @param executor The executor to load plugins with, or null to load plugins one after another on the calling thread.
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
     }
 
     @Override
@@ -38,8 +71,54 @@ public class OrderedPluginBootstrap implements PluginBootstrap {
         // determine load order by dependsOn manifest property
         var loadOrder = determineLoadOrder(new HashSet<>(found));
 
+        if (classListCache != null) {
+            for (var plugin : loadOrder) {
+                if (plugin instanceof UrlLoadablePlugin urlPlugin) {
+                    urlPlugin.setClassListCache(classListCache);
+                }
+            }
+        }
+
+        final Executor executor = this.executor;
+
+        try {
+            if (executor != null) {
+                loadParallel(loadOrder, executor);
+            } else {
+                for (var plugin : loadOrder) {
+                    pluginContainer.loadPlugin(plugin);
+                }
+            }
+        } finally {
+            // also stop recording, if loading failed, so that the cache does not keep the class loaders
+            if (classListCache != null) {
+                classListCache.save();
+            }
+        }
+    }
+
+    private void loadParallel(List<LoadablePlugin> loadOrder, Executor executor) {
+        final Map<String, CompletableFuture<Void>> loads = new HashMap<>();
+
+        // dependencies precede their dependants in the load order, so their futures already exist
         for (var plugin : loadOrder) {
-            pluginContainer.loadPlugin(plugin);
+            var dependencies = plugin.getManifest().dependsOn().stream()
+                    .map(loads::get)
+                    .toArray(CompletableFuture[]::new);
+
+            // dependants of a plugin whose load threw an exception are never started
+            var load = CompletableFuture.allOf(dependencies)
+                    .thenRunAsync(() -> pluginContainer.loadPlugin(plugin), executor);
+
+            loads.put(plugin.getManifest().id(), load);
+        }
+
+        try {
+            CompletableFuture.allOf(loads.values().toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
         }
     }
 
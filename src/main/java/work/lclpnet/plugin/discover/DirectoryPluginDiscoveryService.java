@@ -2,12 +2,14 @@ package work.lclpnet.plugin.discover;
 
 import org.slf4j.Logger;
 import work.lclpnet.plugin.load.ClassLoaderContainer;
+import work.lclpnet.plugin.load.ClassSourceFactory;
 import work.lclpnet.plugin.load.LoadablePlugin;
 import work.lclpnet.plugin.load.UrlLoadablePlugin;
 import work.lclpnet.plugin.manifest.ManifestLoadException;
 import work.lclpnet.plugin.manifest.PluginManifest;
 import work.lclpnet.plugin.manifest.PluginManifestLoader;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -26,6 +28,8 @@ public class DirectoryPluginDiscoveryService implements PluginDiscoveryService {
     private final PluginManifestLoader manifestLoader;
     private final ClassLoaderContainer classLoaderContainer;
     private final Logger logger;
+    @Nullable
+    private ClassSourceFactory classSourceFactory = null;
 
     public DirectoryPluginDiscoveryService(Path directory, PluginManifestLoader manifestLoader,
                                            ClassLoaderContainer classLoaderContainer, Logger logger) {
@@ -35,6 +39,14 @@ public class DirectoryPluginDiscoveryService implements PluginDiscoveryService {
         this.logger = logger;
     }
 
+    /**
+     * Set a class source factory for the discovered plugins, e.g. {@link work.lclpnet.plugin.load.MappedClassStore}.
+     * @param classSourceFactory The class source factory, or null to only load classes from the plugin jars.
+     */
+    public void setClassSourceFactory(@Nullable ClassSourceFactory classSourceFactory) {
+        this.classSourceFactory = classSourceFactory;
+    }
+
     @Override
     public Stream<LoadablePlugin> discover() throws IOException {
         Set<LoadablePlugin> plugins = new HashSet<>();
@@ -65,7 +77,10 @@ public class DirectoryPluginDiscoveryService implements PluginDiscoveryService {
 
         var url = path.toUri().toURL();
 
-        return Optional.of(new UrlLoadablePlugin(state.manifest, url, src, classLoaderContainer));
+        var plugin = new UrlLoadablePlugin(state.manifest, url, src, classLoaderContainer);
+        plugin.setClassSourceFactory(classSourceFactory);
+
+        return Optional.of(plugin);
     }
 
     private boolean isPlugin(Path path, State state) {
@@ -7,12 +7,53 @@ import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+/**
+ * A directed acyclic graph.
+ * <p>
+ * The graph maintains a topological order of its nodes, which is updated incrementally when edges are added,
+ * with the dynamic ordering algorithm by Pearce and Kelly. Order queries read from the maintained order.
+ * </p>
+ * <p>
+ * Every node of the graph has a stable int id. The descendants of a node are cached as a bit set over these ids,
+ * which is computed on demand and invalidated for the ancestors of a node when an edge to it is added or removed.
+ * Reachability and dependant queries are therefore answered from the cache, without walking the graph.
+ * </p>
+ */
 public class DAG<T> {
 
+    private static final int MIN_COMPACT_SIZE = 32;
+
     private final Map<Object, Node<T>> nodes = new HashMap<>();
+    /* the nodes in topological order, with null entries for removed nodes; the index of a node is its order */
+    private final List<Node<T>> order = new ArrayList<>();
+    /* the nodes by their id, with null entries for ids that are free */
+    private final List<Node<T>> byId = new ArrayList<>();
+    private final BitSet freeIds = new BitSet();
+    private int removedCount = 0;
+    /* whether nodes of this graph have children outside this graph, which are not part of the maintained order */
+    private boolean foreignChildren = false;
 
     public Node<T> getOrCreateNode(Object key, T obj) {
-        return nodes.computeIfAbsent(key, k -> new Node<>(key, obj));
+        return nodes.computeIfAbsent(key, k -> {
+            var node = new Node<>(key, obj);
+            node.graph = this;
+            node.order = order.size();
+            order.add(node);
+
+            int id = freeIds.nextSetBit(0);
+
+            if (id < 0) {
+                id = byId.size();
+                byId.add(node);
+            } else {
+                freeIds.clear(id);
+                byId.set(id, node);
+            }
+
+            node.id = id;
+
+            return node;
+        });
     }
 
     public Optional<Node<T>> getNode(Object key) {
@@ -21,14 +62,137 @@ public class DAG<T> {
 
     public void removeNode(Object key) {
         var node = nodes.remove(key);
-        if (node != null) node.detach();
+        if (node == null) return;
+
+        node.detach();
+
+        if (node.graph == this) {
+            order.set(node.order, null);
+            // only the ancestors of the node can contain its id, and their caches were invalidated by detach()
+            byId.set(node.id, null);
+            freeIds.set(node.id);
+            node.graph = null;
+            node.id = -1;
+            removedCount++;
+
+            if (removedCount >= MIN_COMPACT_SIZE && removedCount * 2 > order.size()) {
+                compact();
+            }
+        }
     }
 
     public List<Node<T>> getTopologicalOrder() {
         return getTopologicalOrder(null);
     }
 
+    /**
+     * Get nodes in topological order, so that every node precedes its children.
+     *
+     * @param rootNodes The nodes whose descendants should be included, or null to include the whole graph.
+     * @return The nodes in topological order.
+     */
     public List<Node<T>> getTopologicalOrder(@Nullable Set<Node<T>> rootNodes) {
+        if (foreignChildren || rootNodes != null && !rootNodes.stream().allMatch(node -> node.graph == this)) {
+            return sortCopy(rootNodes);
+        }
+
+        if (rootNodes == null) {
+            final List<Node<T>> result = new ArrayList<>(nodes.size());
+
+            for (Node<T> node : order) {
+                if (node != null) result.add(node);
+            }
+
+            return result;
+        }
+
+        // collect the cached descendants and sort them by the maintained order
+        final BitSet reachable = new BitSet(byId.size());
+
+        for (var root : rootNodes) {
+            reachable.set(root.id);
+            reachable.or(descendants(root));
+        }
+
+        final List<Node<T>> result = new ArrayList<>(reachable.cardinality());
+
+        for (int id = reachable.nextSetBit(0); id >= 0; id = reachable.nextSetBit(id + 1)) {
+            result.add(byId.get(id));
+        }
+
+        result.sort(Comparator.comparingInt(node -> node.order));
+
+        return result;
+    }
+
+    /**
+     * Get the ids of all descendants of a node of this graph.
+     * Missing caches are computed bottom-up, so that the descendants of each node are only collected once.
+     * The returned set must not be modified.
+     *
+     * @param start The node, which has to be part of this graph.
+     * @return The ids of the descendants of the node.
+     */
+    private BitSet descendants(Node<T> start) {
+        if (start.descendants != null) return start.descendants;
+
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(start);
+
+        while (!stack.isEmpty()) {
+            var node = stack.peek();
+            boolean ready = true;
+
+            for (var child : node.children) {
+                if (child.descendants == null) {
+                    stack.push(child);
+                    ready = false;
+                }
+            }
+
+            if (!ready) continue;
+
+            stack.pop();
+
+            if (node.descendants != null) continue;  // the node was reachable on multiple paths
+
+            final BitSet descendants = new BitSet();
+
+            for (var child : node.children) {
+                descendants.set(child.id);
+                descendants.or(child.descendants);
+            }
+
+            node.descendants = descendants;
+        }
+
+        return start.descendants;
+    }
+
+    /**
+     * Invalidate the cached descendants of a node and its ancestors.
+     * A node only has a cache if all of its descendants have one, so ancestors of a node without cache are skipped.
+     *
+     * @param start The node whose descendants changed.
+     */
+    private static <T> void invalidate(Node<T> start) {
+        if (start.descendants == null) return;
+
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+        start.descendants = null;
+        stack.push(start);
+
+        while (!stack.isEmpty()) {
+            for (var parent : stack.pop().parents) {
+                if (parent.descendants == null) continue;
+
+                parent.descendants = null;
+                stack.push(parent);
+            }
+        }
+    }
+
+    private List<Node<T>> sortCopy(@Nullable Set<Node<T>> rootNodes) {
         // create a (partial) graph copy, so that this graph remains unmodified
         var graph = this.copy(rootNodes != null ? rootNodes::contains : v -> true);
 
@@ -62,6 +226,122 @@ public class DAG<T> {
         return L;
     }
 
+    /**
+     * Restore the topological order after an edge was added, with the algorithm by Pearce and Kelly.
+     * Only the nodes between the two positions in the order that are connected to the edge are reordered.
+     *
+     * @param parent The parent node.
+     * @param child  The child node.
+     * @see <a href="https://doi.org/10.1145/1187436.1210590">A dynamic topological sort algorithm for directed acyclic graphs</a>
+     */
+    private void onEdgeAdded(Node<T> parent, Node<T> child) {
+        final int lowerBound = child.order, upperBound = parent.order;
+
+        if (lowerBound > upperBound) return;  // the order is still valid
+
+        // descendants of the child and ancestors of the parent within the affected region
+        final List<Node<T>> forward = collect(child, upperBound, true);
+        final List<Node<T>> backward = collect(parent, lowerBound, false);
+
+        final Comparator<Node<T>> byOrder = Comparator.comparingInt(node -> node.order);
+        forward.sort(byOrder);
+        backward.sort(byOrder);
+
+        // reuse the positions of the affected nodes; the ancestors are moved before the descendants
+        final int[] positions = new int[forward.size() + backward.size()];
+        int i = 0;
+
+        for (var node : backward) positions[i++] = node.order;
+        for (var node : forward) positions[i++] = node.order;
+
+        Arrays.sort(positions);
+        i = 0;
+
+        for (var node : backward) place(node, positions[i++]);
+        for (var node : forward) place(node, positions[i++]);
+    }
+
+    private List<Node<T>> collect(Node<T> start, int bound, boolean forward) {
+        final List<Node<T>> result = new ArrayList<>();
+        final Set<Node<T>> visited = new HashSet<>();
+        final Deque<Node<T>> stack = new ArrayDeque<>();
+
+        visited.add(start);
+        stack.push(start);
+
+        while (!stack.isEmpty()) {
+            var node = stack.pop();
+            result.add(node);
+
+            for (var next : forward ? node.children : node.parents) {
+                if (next.graph != this) continue;
+
+                boolean affected = forward ? next.order <= bound : next.order >= bound;
+
+                if (affected && visited.add(next)) {
+                    stack.push(next);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void place(Node<T> node, int position) {
+        node.order = position;
+        order.set(position, node);
+    }
+
+    private void compact() {
+        int position = 0;
+
+        for (Node<T> node : order) {
+            if (node != null) {
+                node.order = position;
+                order.set(position++, node);
+            }
+        }
+
+        order.subList(position, order.size()).clear();
+        removedCount = 0;
+    }
+
+    /**
+     * Group nodes into dependency levels. Each node is in the level after the deepest level of its parents,
+     * so nodes within a level never depend on each other.
+     *
+     * @param rootNodes The nodes whose descendants should be included, or null to include the whole graph.
+     * @return The levels, starting with the root nodes.
+     */
+    public List<List<Node<T>>> getLevels(@Nullable Set<Node<T>> rootNodes) {
+        final Map<Object, Integer> depths = new HashMap<>();
+        final List<List<Node<T>>> levels = new ArrayList<>();
+
+        // parents precede their children in the topological order, so their depth is already known
+        for (var copied : getTopologicalOrder(rootNodes)) {
+            var node = nodes.getOrDefault(copied.getKey(), copied);
+            int depth = 0;
+
+            for (var parent : node.getParents()) {
+                Integer parentDepth = depths.get(parent.getKey());
+
+                if (parentDepth != null) {
+                    depth = Math.max(depth, parentDepth + 1);
+                }
+            }
+
+            depths.put(node.getKey(), depth);
+
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<>());
+            }
+
+            levels.get(depth).add(node);
+        }
+
+        return levels;
+    }
+
     public DAG<T> copy(Predicate<Node<T>> filter) {
         var copy = new DAG<T>();
 
@@ -95,6 +375,14 @@ public class DAG<T> {
         private final Set<Node<T>> children = new HashSet<>();
         private final Object key;
         private final T obj;
+        /* the graph that maintains the order of this node, if any */
+        @Nullable
+        private DAG<T> graph = null;
+        private int order = -1;
+        private int id = -1;
+        /* the cached ids of the descendants, or null if they have to be computed */
+        @Nullable
+        private BitSet descendants = null;
 
         public Node(Object key, T obj) {
             this.key = key;
@@ -114,23 +402,52 @@ public class DAG<T> {
         }
 
         public boolean addChild(Node<T> node) {
-            if (node.hasChildDeep(this)) return false;
+            if (node == this || node.hasChildDeep(this)) return false;
+
+            if (!children.add(node)) return true;
 
-            children.add(node);
             node.parents.add(this);
 
+            if (graph != null) {
+                if (node.graph == graph) {
+                    invalidate(this);
+                    graph.onEdgeAdded(this, node);
+                } else {
+                    graph.foreignChildren = true;
+                }
+            }
+
             return true;
         }
 
         public void detach() {
             this.children.forEach(c -> c.parents.remove(this));
-            this.parents.forEach(p -> p.children.remove(this));
+            this.parents.forEach(p -> {
+                p.children.remove(this);
+                invalidate(p);
+            });
+            this.descendants = null;
         }
 
         public boolean hasChildDeep(Node<T> node) {
-            for (var child : children) {
-                if (node.equals(child) || child.hasChildDeep(node)) {
-                    return true;
+            // within a graph, descendants always come later in the maintained order
+            final boolean ordered = graph != null && node.graph == graph && !graph.foreignChildren;
+
+            if (ordered) {
+                return node.order > order && graph.descendants(this).get(node.id);
+            }
+
+            // each node is visited once, even if it is reachable on multiple paths
+            final Set<Node<T>> visited = new HashSet<>();
+            final Deque<Node<T>> stack = new ArrayDeque<>(children);
+
+            while (!stack.isEmpty()) {
+                var child = stack.pop();
+
+                if (node.equals(child)) return true;
+
+                if (visited.add(child)) {
+                    stack.addAll(child.children);
                 }
             }
 
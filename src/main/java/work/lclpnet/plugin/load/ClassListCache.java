@@ -0,0 +1,195 @@
+package work.lclpnet.plugin.load;
+
+import org.slf4j.Logger;
+import work.lclpnet.plugin.util.ClassPathHash;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A cache of the classes each plugin loads during startup, keyed by the hash of the plugin classpath.
+ * <p>
+ * On a training run, there is no class list for a plugin yet, so its class loader records the classes it defines.
+ * {@link #save()} writes the recorded lists into the cache directory.
+ * On later runs, the recorded classes are loaded in parallel in the background, as soon as the class loader is created.
+ * When a plugin jar changes, its hash changes as well, so that the outdated list is no longer used and a new one
+ * is recorded instead.
+ * </p>
+ */
+public class ClassListCache {
+
+    private static final String EXTENSION = ".classlist";
+
+    private final Path directory;
+    private final ClassPreloader preloader;
+    private final Logger logger;
+    private final Map<PluginClassLoader, String> recording = new ConcurrentHashMap<>();
+
+    public ClassListCache(Path directory, Logger logger) {
+        this(directory, ForkJoinPool.commonPool(), logger);
+    }
+
+    /**
+     * Creates a new class list cache.
+     *
+     * @param directory The directory to store the class lists in.
+     * @param executor  The executor to preload classes with.
+     * @param logger    A logger for cache errors.
+     */
+    public ClassListCache(Path directory, Executor executor, Logger logger) {
+        this.directory = Objects.requireNonNull(directory);
+        this.preloader = new ClassPreloader(executor, ClassPreloader.Listener.NONE);
+        this.logger = logger;
+    }
+
+    /**
+     * Prepare a newly created plugin class loader.
+     * If there is a class list for the current classpath contents, the listed classes are loaded in the background.
+     * Otherwise, the class loader starts recording its classes, until {@link #save()} is called.
+     *
+     * @param classLoader The plugin class loader.
+     * @return A future that completes when all listed classes have been loaded.
+     * Completes immediately, if the classes are recorded instead.
+     */
+    public CompletableFuture<Void> prepare(PluginClassLoader classLoader) {
+        return prepare(classLoader, ClassPathHash.of(classLoader.getURLs()));
+    }
+
+    /**
+     * Prepare a newly created plugin class loader, with a classpath hash that might already be computed.
+     *
+     * @param classLoader   The plugin class loader.
+     * @param classPathHash The hash of the classpath of the class loader.
+     * @return A future that completes when all listed classes have been loaded.
+     * Completes immediately, if the classes are recorded instead.
+     * @see #prepare(PluginClassLoader)
+     */
+    public CompletableFuture<Void> prepare(PluginClassLoader classLoader, ClassPathHash classPathHash) {
+        final String id = classLoader.getManifest().id();
+        final Optional<String> hash;
+
+        try {
+            hash = classPathHash.get();
+        } catch (IOException e) {
+            logger.warn("Failed to hash the classpath of plugin '%s'".formatted(id), e);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (hash.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        Optional<List<String>> classNames = read(id, hash.get());
+
+        if (classNames.isEmpty()) {
+            classLoader.startRecording();
+            recording.put(classLoader, hash.get());
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return preloader.preload(classLoader, classNames.get());
+    }
+
+    /**
+     * Stop recording the classes of a class loader without saving them, e.g. because its plugin failed to load.
+     * The cache no longer references the class loader afterwards.
+     *
+     * @param classLoader The plugin class loader.
+     */
+    public void discard(PluginClassLoader classLoader) {
+        if (recording.remove(classLoader) != null) {
+            classLoader.stopRecording();
+        }
+    }
+
+    /**
+     * Write the class lists of all recording class loaders to the cache directory and stop recording.
+     */
+    public void save() {
+        var it = recording.entrySet().iterator();
+
+        while (it.hasNext()) {
+            var entry = it.next();
+            it.remove();
+
+            PluginClassLoader classLoader = entry.getKey();
+            String id = classLoader.getManifest().id();
+            List<String> classNames = classLoader.stopRecording();
+
+            try {
+                write(id, entry.getValue(), classNames);
+            } catch (IOException e) {
+                logger.warn("Failed to write the class list of plugin '%s'".formatted(id), e);
+            }
+        }
+    }
+
+    /**
+     * Read the class list of a plugin.
+     *
+     * @param pluginId The plugin id.
+     * @param hash     The hash of the plugin classpath.
+     * @return The recorded class names, or an empty optional if there is no list for the plugin with that hash.
+     */
+    public Optional<List<String>> read(String pluginId, String hash) {
+        Path file = directory.resolve(fileName(pluginId, hash));
+
+        if (!Files.isRegularFile(file)) return Optional.empty();
+
+        try {
+            return Optional.of(Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.isBlank())
+                    .toList());
+        } catch (IOException e) {
+            logger.warn("Failed to read class list %s".formatted(file), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Write the class list of a plugin and remove outdated lists of the plugin.
+     *
+     * @param pluginId   The plugin id.
+     * @param hash       The hash of the plugin classpath.
+     * @param classNames The class names to write.
+     * @throws IOException If the list could not be written.
+     */
+    public void write(String pluginId, String hash, List<String> classNames) throws IOException {
+        Files.createDirectories(directory);
+
+        final String fileName = fileName(pluginId, hash);
+
+        // remove lists of other versions of the plugin
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, safeId(pluginId) + "-*" + EXTENSION)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(fileName)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        // write to a temporary file first, so that concurrent readers never see a partial list
+        Path tmp = Files.createTempFile(directory, safeId(pluginId), ".tmp");
+        Files.write(tmp, classNames, StandardCharsets.UTF_8);
+        Files.move(tmp, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String fileName(String pluginId, String hash) {
+        return safeId(pluginId) + "-" + hash + EXTENSION;
+    }
+
+    private static String safeId(String pluginId) {
+        return pluginId.replaceAll("[^A-Za-z0-9._]", "_");
+    }
+}
@@ -5,4 +5,14 @@ public interface ClassLoaderContainer extends ClassResolver, ResourceResolver {
     void add(ClassLoader classLoader);
 
     void remove(ClassLoader classLoader);
+
+    /**
+     * Run an action that removes multiple class loaders, e.g. on shutdown.
+     * Implementations may defer the removals until the action has completed, in order to update their state only once.
+     *
+     * @param removals The action that removes the class loaders.
+     */
+    default void removeBatch(Runnable removals) {
+        removals.run();
+    }
 }
@@ -0,0 +1,200 @@
+package work.lclpnet.plugin.load;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects class loading statistics per plugin.
+ * <p>
+ * Lookup counts are always exact. Timings and the origins of delegated classes are only recorded for a random sample
+ * of the lookups; with a sample interval of n, about every n-th lookup is measured and the timings are extrapolated.
+ * A sample interval of 1 measures every lookup, larger intervals keep the overhead low enough for production use.
+ * </p>
+ */
+public class ClassLoadingProfiler {
+
+    public static final int DEFAULT_MAX_ORIGINS = 1024;
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final int sampleInterval;
+    private final int maxOrigins;
+    private final Map<String, PluginProfile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a profiler that measures every lookup.
+     */
+    public ClassLoadingProfiler() {
+        this(1);
+    }
+
+    public ClassLoadingProfiler(int sampleInterval) {
+        this(sampleInterval, DEFAULT_MAX_ORIGINS);
+    }
+
+    /**
+     * Creates a new class loading profiler.
+     *
+     * @param sampleInterval Measure about one in this many lookups.
+     * @param maxOrigins     The maximum number of delegated class origins to remember per plugin.
+     */
+    public ClassLoadingProfiler(int sampleInterval, int maxOrigins) {
+        if (sampleInterval < 1) throw new IllegalArgumentException("Sample interval must be positive");
+        if (maxOrigins < 0) throw new IllegalArgumentException("Max origins must not be negative");
+
+        this.sampleInterval = sampleInterval;
+        this.maxOrigins = maxOrigins;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    PluginProfile profile(String pluginId) {
+        return profiles.computeIfAbsent(pluginId, id -> new PluginProfile());
+    }
+
+    /**
+     * Get the statistics of a plugin.
+     *
+     * @param pluginId The plugin id.
+     * @return The statistics, or an empty optional if no class loading of the plugin was recorded.
+     */
+    public Optional<ClassLoadingStats> getStats(String pluginId) {
+        return Optional.ofNullable(profiles.get(pluginId)).map(profile -> profile.snapshot(pluginId));
+    }
+
+    /**
+     * Get the statistics of all plugins.
+     *
+     * @return The statistics, in descending order of the time spent finding classes.
+     */
+    public List<ClassLoadingStats> getStats() {
+        List<ClassLoadingStats> stats = new ArrayList<>();
+        profiles.forEach((id, profile) -> stats.add(profile.snapshot(id)));
+
+        stats.sort(Comparator.comparingLong(ClassLoadingStats::findNanos).reversed());
+
+        return stats;
+    }
+
+    /**
+     * Discard all recorded statistics.
+     */
+    public void reset() {
+        profiles.clear();
+    }
+
+    private static String describe(@Nullable ClassLoader loader) {
+        if (loader == null) return "bootstrap";
+        if (loader instanceof PluginClassLoader pcl) return pcl.getManifest().id();
+
+        String name = loader.getName();
+        return name != null ? name : loader.getClass().getName();
+    }
+
+    /**
+     * The mutable statistics of a single plugin.
+     */
+    final class PluginProfile {
+
+        private final LongAdder localHits = new LongAdder();
+        private final LongAdder delegatedHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder servedToOthers = new LongAdder();
+        private final LongAdder resourceLookups = new LongAdder();
+        private final LongAdder findNanos = new LongAdder();
+        private final LongAdder resolveNanos = new LongAdder();
+        private final LongAdder resourceNanos = new LongAdder();
+        private final Map<String, String> origins = new ConcurrentHashMap<>();
+
+        private PluginProfile() {}
+
+        /**
+         * Start measuring a lookup.
+         * @return The start time, or {@link #NOT_SAMPLED} if this lookup is not measured.
+         */
+        long start() {
+            if (sampleInterval != 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+                return NOT_SAMPLED;
+            }
+
+            return System.nanoTime();
+        }
+
+        void recordFind(@Nullable Class<?> res, boolean local, long start) {
+            if (res == null) {
+                misses.increment();
+            } else if (local) {
+                localHits.increment();
+            } else {
+                delegatedHits.increment();
+            }
+
+            addElapsed(findNanos, start);
+        }
+
+        void recordResolve(String name, @Nullable Class<?> res, long start) {
+            if (start == NOT_SAMPLED) return;
+
+            addElapsed(resolveNanos, start);
+
+            if (res != null && origins.size() < maxOrigins) {
+                origins.put(name, describe(res.getClassLoader()));
+            }
+        }
+
+        void recordServed() {
+            servedToOthers.increment();
+        }
+
+        void recordResources(long start) {
+            resourceLookups.increment();
+            addElapsed(resourceNanos, start);
+        }
+
+        /**
+         * Measure the time spent iterating a lazy resource enumeration.
+         * Most of a resource lookup happens while the enumeration is iterated, e.g. asking other plugins.
+         */
+        <T> Enumeration<T> timeResources(Enumeration<T> resources) {
+            return new Enumeration<>() {
+                @Override
+                public boolean hasMoreElements() {
+                    final long start = System.nanoTime();
+
+                    try {
+                        return resources.hasMoreElements();
+                    } finally {
+                        addElapsed(resourceNanos, start);
+                    }
+                }
+
+                @Override
+                public T nextElement() {
+                    final long start = System.nanoTime();
+
+                    try {
+                        return resources.nextElement();
+                    } finally {
+                        addElapsed(resourceNanos, start);
+                    }
+                }
+            };
+        }
+
+        private void addElapsed(LongAdder adder, long start) {
+            if (start == NOT_SAMPLED) return;
+
+            adder.add(System.nanoTime() - start);
+        }
+
+        private ClassLoadingStats snapshot(String pluginId) {
+            return new ClassLoadingStats(pluginId, localHits.sum(), delegatedHits.sum(), misses.sum(),
+                    servedToOthers.sum(), resourceLookups.sum(), findNanos.sum() * sampleInterval,
+                    resolveNanos.sum() * sampleInterval, resourceNanos.sum() * sampleInterval, Map.copyOf(origins));
+        }
+    }
+}
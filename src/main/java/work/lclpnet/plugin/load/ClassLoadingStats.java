@@ -0,0 +1,25 @@
+package work.lclpnet.plugin.load;
+
+import java.util.Map;
+
+/**
+ * A snapshot of the class loading statistics of a plugin.
+ * Timings are extrapolated from the sampled lookups, see {@link ClassLoadingProfiler}.
+ *
+ * @param pluginId        The plugin id.
+ * @param localHits       Classes found in the plugin classpath.
+ * @param delegatedHits   Classes the plugin obtained from other class loaders.
+ * @param misses          Classes that could not be found at all.
+ * @param servedToOthers  Classes this plugin provided to other plugins.
+ * @param resourceLookups Resource enumerations requested from the plugin class loader.
+ * @param findNanos       Time spent finding classes, including delegation.
+ * @param resolveNanos    Time spent resolving classes from other class loaders.
+ * @param resourceNanos   Time spent enumerating resources, including the iteration of the returned enumerations.
+ * @param delegatedOrigins The class loaders that served sampled delegated classes, by class name.
+ *                         Plugin class loaders are named by their plugin id.
+ */
+public record ClassLoadingStats(String pluginId, long localHits, long delegatedHits, long misses,
+                                long servedToOthers, long resourceLookups, long findNanos, long resolveNanos,
+                                long resourceNanos, Map<String, String> delegatedOrigins) {
+
+}
@@ -0,0 +1,197 @@
+package work.lclpnet.plugin.load;
+
+import work.lclpnet.plugin.manifest.PluginManifest;
+import work.lclpnet.plugin.util.ClassPathEntries;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads and links plugin classes in the background, so that they are not loaded lazily on the first request.
+ * <p>
+ * Classes are loaded in batches on a bounded executor.
+ * They are linked, but not initialized, so that no plugin code is executed by the preload.
+ * </p>
+ */
+public class ClassPreloader {
+
+    /** Preload entry for all classes of a plugin. */
+    public static final String ALL_CLASSES = "*";
+    private static final String PACKAGE_SUFFIX = ".*";
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final Listener listener;
+
+    /**
+     * Creates a class preloader with its own pool of low priority daemon threads.
+     *
+     * @param threads The maximum number of threads to preload classes with.
+     */
+    public ClassPreloader(int threads) {
+        this(createPool(threads), Listener.NONE);
+    }
+
+    /**
+     * Creates a new class preloader.
+     *
+     * @param executor The executor to preload classes with. It should be bounded, in order to leave room for the
+     *                 plugins themselves.
+     * @param listener A listener that is notified about the preload progress.
+     */
+    public ClassPreloader(Executor executor, Listener listener) {
+        this.executor = Objects.requireNonNull(executor);
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Preload the classes declared in the manifest of a plugin.
+     *
+     * @param classLoader The plugin class loader.
+     * @return A future that completes when all classes have been preloaded.
+     * Cancelling the future stops the preload after the current class.
+     * @see PluginManifest#preload()
+     */
+    public CompletableFuture<Void> preload(PluginClassLoader classLoader) {
+        return preload(classLoader, selectClasses(classLoader));
+    }
+
+    /**
+     * Preload the given classes of a plugin.
+     * Classes that cannot be loaded are skipped; the plugin will encounter the error itself, if it needs the class.
+     *
+     * @param classLoader The plugin class loader.
+     * @param classNames  The binary names of the classes to preload.
+     * @return A future that completes when all classes have been preloaded.
+     * Cancelling the future stops the preload after the current class.
+     */
+    public CompletableFuture<Void> preload(PluginClassLoader classLoader, Collection<String> classNames) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final List<String> names = List.copyOf(classNames);
+        final int total = names.size();
+
+        if (total == 0) {
+            result.complete(null);
+            return result;
+        }
+
+        final PluginManifest manifest = classLoader.getManifest();
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger pendingBatches = new AtomicInteger((total + BATCH_SIZE - 1) / BATCH_SIZE);
+
+        for (int i = 0; i < total; i += BATCH_SIZE) {
+            var batch = names.subList(i, Math.min(total, i + BATCH_SIZE));
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        for (String className : batch) {
+                            if (result.isDone()) return;
+
+                            preloadClass(className, classLoader);
+                        }
+
+                        listener.onProgress(manifest, processed.addAndGet(batch.size()), total);
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    } finally {
+                        if (pendingBatches.decrementAndGet() == 0) {
+                            result.complete(null);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Resolve the preload entries of a plugin manifest to class names.
+     * Package entries and {@link #ALL_CLASSES} can only be resolved, if the classpath of the loader is indexed.
+     *
+     * @param classLoader The plugin class loader.
+     * @return The sorted binary names of the classes to preload.
+     */
+    public static List<String> selectClasses(PluginClassLoader classLoader) {
+        final Set<String> entries = classLoader.getManifest().preload();
+        if (entries.isEmpty()) return List.of();
+
+        final Set<String> available = classLoader.getEntryIndex()
+                .map(EntryIndex::getClassNames)
+                .orElse(Set.of());
+
+        if (entries.contains(ALL_CLASSES)) {
+            return available.stream().sorted().toList();
+        }
+
+        final Set<String> selected = new TreeSet<>();
+
+        for (String entry : entries) {
+            if (!entry.endsWith(PACKAGE_SUFFIX)) {
+                selected.add(entry);
+                continue;
+            }
+
+            String packageName = entry.substring(0, entry.length() - PACKAGE_SUFFIX.length());
+
+            for (String className : available) {
+                if (packageName.equals(ClassPathEntries.packageOf(className))) {
+                    selected.add(className);
+                }
+            }
+        }
+
+        return new ArrayList<>(selected);
+    }
+
+    private static void preloadClass(String className, ClassLoader classLoader) {
+        try {
+            Class<?> type = Class.forName(className, false, classLoader);
+
+            // reflecting the members links and verifies the class, without running its static initializer
+            type.getDeclaredFields();
+        } catch (ClassNotFoundException | LinkageError | SecurityException ignored) {
+            // the plugin will encounter the error itself, if it actually needs the class
+        }
+    }
+
+    private static ExecutorService createPool(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("At least one thread is required");
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        var pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Plugin-Preload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    /**
+     * A listener for preload progress.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        Listener NONE = (manifest, processed, total) -> {};
+
+        /**
+         * Called after a batch of classes was preloaded. May be called concurrently from multiple threads.
+         *
+         * @param manifest  The manifest of the plugin whose classes are preloaded.
+         * @param processed The number of classes processed so far.
+         * @param total     The total number of classes to preload.
+         */
+        void onProgress(PluginManifest manifest, int processed, int total);
+    }
+}
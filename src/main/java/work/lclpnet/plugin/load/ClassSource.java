@@ -0,0 +1,51 @@
+package work.lclpnet.plugin.load;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An alternative source of class files for a {@link PluginClassLoader}.
+ * A plugin class loader asks its class source before searching its classpath urls.
+ */
+public interface ClassSource extends Closeable {
+
+    /**
+     * Find the class file of a class.
+     *
+     * @param className The binary name of the class.
+     * @return The class file, or null if the source does not contain the class.
+     */
+    @Nullable
+    ClassFile find(String className);
+
+    /**
+     * Find resources that are not on the classpath urls of the plugin.
+     * The plugin class loader asks its class source after searching its classpath urls.
+     *
+     * @param name The resource name.
+     * @return The resource urls, or an empty list if the source does not contain the resource.
+     */
+    default List<URL> findResources(String name) {
+        return List.of();
+    }
+
+    /**
+     * Get the packages of classes that are not on the classpath urls of the plugin.
+     * @return The binary package names.
+     */
+    default Set<String> getPackageNames() {
+        return Set.of();
+    }
+
+    /**
+     * The contents of a class file.
+     *
+     * @param bytes      The class file bytes, from the buffer position to its limit.
+     * @param codeSource The location the class originates from, used for the protection domain of the class.
+     */
+    record ClassFile(ByteBuffer bytes, @Nullable URL codeSource) {}
+}
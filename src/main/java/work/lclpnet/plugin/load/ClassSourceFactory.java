@@ -0,0 +1,22 @@
+package work.lclpnet.plugin.load;
+
+import work.lclpnet.plugin.manifest.PluginManifest;
+import work.lclpnet.plugin.util.ClassPathHash;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Optional;
+
+public interface ClassSourceFactory {
+
+    /**
+     * Create a class source for a plugin that is about to be loaded.
+     *
+     * @param manifest The plugin manifest.
+     * @param urls     The classpath urls of the plugin.
+     * @param hash     The hash of the classpath, which is shared with the other caches of the plugin.
+     * @return The class source, or an empty optional if the plugin should only be loaded from its urls.
+     * @throws IOException If the class source could not be created.
+     */
+    Optional<ClassSource> create(PluginManifest manifest, URL[] urls, ClassPathHash hash) throws IOException;
+}
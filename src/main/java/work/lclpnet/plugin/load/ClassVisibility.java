@@ -0,0 +1,16 @@
+package work.lclpnet.plugin.load;
+
+/**
+ * Determines which plugin class loaders a {@link PluginClassLoader} may resolve classes from.
+ */
+public enum ClassVisibility {
+
+    /**
+     * Classes of every loaded plugin are visible.
+     */
+    ALL,
+    /**
+     * Only classes of the plugins in the transitive dependsOn closure of the plugin manifest are visible.
+     */
+    DEPENDENCIES
+}
@@ -1,23 +1,84 @@
 package work.lclpnet.plugin.load;
 
+import work.lclpnet.plugin.util.ClassPathEntries;
 import work.lclpnet.plugin.util.CompoundEnumeration;
 
-import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class DefaultClassLoaderContainer implements ClassLoaderContainer, Closeable {
 
-    private final Set<ClassLoader> loaders = new HashSet<>();
+    public static final int DEFAULT_NEGATIVE_CACHE_SIZE = 4096;
+    private static final int RESOURCE_CACHE_SIZE = 1024;
+
+    private final Object mutationLock = new Object();
+    private final ClassVisibility visibility;
+    private final int negativeCacheSize;
+    private final LongAdder negativeCacheHits = new LongAdder();
+    private final LongAdder negativeCacheMisses = new LongAdder();
+    /* immutable snapshot of the registered loaders, replaced on every change; readers do not lock */
+    private volatile Registry registry = Registry.EMPTY;
+    /* incremented whenever the registry is replaced, guarded by the mutation lock */
+    private volatile long version = 0;
+    /* class loaders removed during the current batch, guarded by the mutation lock */
+    @Nullable
+    private Set<ClassLoader> batchRemovals = null;
+    private int batchDepth = 0;
+    @Nullable
+    private volatile ClassLoadingProfiler profiler = null;
+
+    public DefaultClassLoaderContainer() {
+        this(DEFAULT_NEGATIVE_CACHE_SIZE);
+    }
+
+    public DefaultClassLoaderContainer(int negativeCacheSize) {
+        this(ClassVisibility.ALL, negativeCacheSize);
+    }
+
+    public DefaultClassLoaderContainer(ClassVisibility visibility) {
+        this(visibility, DEFAULT_NEGATIVE_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new class loader container.
+     *
+     * @param visibility        Which plugin class loaders a {@link PluginClassLoader} may resolve classes from.
+     *                          Class loaders that are no {@link PluginClassLoader} are always visible.
+     * @param negativeCacheSize The maximum number of class names that are remembered as unresolvable.
+     *                          When the limit is reached, the remembered names are discarded.
+     *                          Use 0 to disable the negative cache.
+     */
+    public DefaultClassLoaderContainer(ClassVisibility visibility, int negativeCacheSize) {
+        if (negativeCacheSize < 0) throw new IllegalArgumentException("Negative cache size must not be negative");
+
+        this.visibility = Objects.requireNonNull(visibility);
+        this.negativeCacheSize = negativeCacheSize;
+    }
 
     @Override
     public void add(ClassLoader classLoader) {
         if (classLoader == null) return;
 
-        synchronized (loaders) {
+        synchronized (mutationLock) {
+            var current = registry;
+            if (current.contains(classLoader)) return;
+
+            // the new loader might provide previously unresolvable classes; the new registry starts with an empty cache
+            List<ClassLoader> loaders = new ArrayList<>(List.of(current.loaders));
             loaders.add(classLoader);
+
+            if (classLoader instanceof PluginClassLoader pcl) {
+                pcl.setProfiler(profiler);
+            }
+
+            replaceRegistry(Registry.of(loaders));
         }
     }
 
@@ -25,27 +86,124 @@ public class DefaultClassLoaderContainer implements ClassLoaderContainer, Closea
     public void remove(ClassLoader classLoader) {
         if (classLoader == null) return;
 
-        synchronized (loaders) {
-            loaders.remove(classLoader);
+        synchronized (mutationLock) {
+            var current = registry;
+
+            if (batchRemovals != null) {
+                // the class loader stays registered and open until the batch has completed
+                if (current.contains(classLoader)) batchRemovals.add(classLoader);
+                return;
+            }
+
+            if (current.contains(classLoader)) {
+                List<ClassLoader> loaders = new ArrayList<>(List.of(current.loaders));
+                loaders.remove(classLoader);
+
+                replaceRegistry(Registry.of(loaders));
+            }
         }
 
         closeIfNecessary(classLoader);
     }
 
+    /**
+     * Run an action that removes multiple class loaders.
+     * The removed class loaders stay available until the action has completed.
+     * Then, the registry is rebuilt once and the removed class loaders are closed.
+     *
+     * @param removals The action that removes the class loaders.
+     */
     @Override
-    public void close() {
-        synchronized (loaders) {
-            var it = loaders.iterator();
+    public void removeBatch(Runnable removals) {
+        synchronized (mutationLock) {
+            if (batchDepth++ == 0) {
+                batchRemovals = new LinkedHashSet<>();
+            }
+        }
+
+        try {
+            removals.run();
+        } finally {
+            final Set<ClassLoader> removed;
+
+            synchronized (mutationLock) {
+                if (--batchDepth == 0) {
+                    removed = batchRemovals;
+                    batchRemovals = null;
 
-            while (it.hasNext()) {
-                var loader = it.next();
-                it.remove();
+                    if (!removed.isEmpty()) {
+                        List<ClassLoader> loaders = new ArrayList<>(List.of(registry.loaders));
+                        loaders.removeAll(removed);
 
+                        replaceRegistry(Registry.of(loaders));
+                    }
+                } else {
+                    removed = Set.of();
+                }
+            }
+
+            for (ClassLoader loader : removed) {
                 closeIfNecessary(loader);
             }
         }
     }
 
+    @Override
+    public void close() {
+        final Registry closed;
+
+        synchronized (mutationLock) {
+            closed = registry;
+            replaceRegistry(Registry.EMPTY);
+        }
+
+        for (ClassLoader loader : closed.loaders) {
+            closeIfNecessary(loader);
+        }
+    }
+
+    /**
+     * Get the version of the registered class loaders.
+     * The version increases whenever the class loaders change, except for removals within a batch,
+     * which increase it once after the batch has completed.
+     *
+     * @return The current version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private void replaceRegistry(Registry registry) {
+        this.registry = registry;
+        version++;
+    }
+
+    /**
+     * Set a profiler for all plugin class loaders in this container, including those added later.
+     *
+     * @param profiler The profiler, or null to stop profiling.
+     */
+    public void setProfiler(@Nullable ClassLoadingProfiler profiler) {
+        synchronized (mutationLock) {
+            this.profiler = profiler;
+
+            for (ClassLoader loader : registry.loaders) {
+                if (loader instanceof PluginClassLoader pcl) {
+                    pcl.setProfiler(profiler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the profiler of this container, which can be queried for class loading statistics.
+     *
+     * @return The profiler, or an empty optional if profiling is disabled.
+     */
+    public Optional<ClassLoadingProfiler> getProfiler() {
+        return Optional.ofNullable(profiler);
+    }
+
     private static void closeIfNecessary(ClassLoader classLoader) {
         if (classLoader instanceof Closeable c) {
             try {
@@ -54,65 +212,383 @@ public class DefaultClassLoaderContainer implements ClassLoaderContainer, Closea
         }
     }
 
+    /**
+     * Resolve a class from the registered class loaders, other than the delegate.
+     * Classes that could not be resolved are remembered until the set of class loaders changes.
+     * Therefore, the delegate is expected to have already failed to find the class itself, like
+     * {@link PluginClassLoader} does.
+     *
+     * @param name The binary name of the class.
+     * @param delegate The class loader which requests the class.
+     * @return The resolved class, or an empty optional if no other class loader could provide the class.
+     */
     @Override
     public Optional<Class<?>> resolve(String name, ClassLoader delegate) {
-        synchronized (loaders) {
-            Class<?> res = null;
+        final var profile = delegate instanceof PluginClassLoader pcl ? pcl.getProfile() : null;
+
+        if (profile == null) {
+            return resolveUnprofiled(name, delegate);
+        }
+
+        final long start = profile.start();
+        final Optional<Class<?>> res = resolveUnprofiled(name, delegate);
+
+        profile.recordResolve(name, res.orElse(null), start);
+
+        return res;
+    }
+
+    private Optional<Class<?>> resolveUnprofiled(String name, ClassLoader delegate) {
+        final Registry registry = this.registry;
+        final boolean scoped = visibility == ClassVisibility.DEPENDENCIES && delegate instanceof PluginClassLoader;
+
+        // in dependency scope, unresolvable classes differ between plugins
+        final String cacheKey = scoped ? ((PluginClassLoader) delegate).getManifest().id() + '/' + name : name;
+
+        // while plugins are reloaded side by side, the result depends on the generation of the delegate
+        final boolean cacheable = registry.generations.isEmpty();
+
+        if (cacheable && registry.unresolvable.contains(cacheKey)) {
+            negativeCacheHits.increment();
+            return Optional.empty();
+        }
+
+        negativeCacheMisses.increment();
+
+        final String packageName = ClassPathEntries.packageOf(name);
+        Optional<Class<?>> res;
+
+        if (scoped) {
+            res = resolveFromDependencies(registry, name, packageName, (PluginClassLoader) delegate);
+        } else {
+            res = resolveFromAll(registry, name, packageName, delegate);
+        }
+
+        if (res.isEmpty() && cacheable) {
+            rememberUnresolvable(registry, cacheKey);
+        }
+
+        return res;
+    }
+
+    private void rememberUnresolvable(Registry registry, String key) {
+        if (negativeCacheSize == 0) return;
+
+        var unresolvable = registry.unresolvable;
+
+        if (unresolvable.size() >= negativeCacheSize) {
+            unresolvable.clear();
+        }
+
+        unresolvable.add(key);
+    }
+
+    private static Optional<Class<?>> resolveFromAll(Registry registry, String name, String packageName,
+                                                     ClassLoader delegate) {
+        // only ask the loaders that contain the package of the class
+        ClassLoader[] candidates = registry.loadersByPackage.get(packageName);
+
+        if (candidates != null) {
+            var res = resolve(name, delegate, visible(registry, candidates, delegate));
+            if (res.isPresent()) return res;
+        }
+
+        return resolve(name, delegate, visible(registry, registry.unindexedLoaders, delegate));
+    }
 
-            for (var loader : loaders) {
-                // skip self
-                if (delegate != null && delegate.equals(loader)) continue;
+    private static ClassLoader[] visible(Registry registry, ClassLoader[] loaders, ClassLoader delegate) {
+        if (registry.generations.isEmpty()) return loaders;
 
-                // try to load class from other class loaders
+        return Arrays.stream(loaders)
+                .filter(loader -> registry.isVisible(loader, delegate))
+                .toArray(ClassLoader[]::new);
+    }
+
+    private static Optional<Class<?>> resolveFromDependencies(Registry registry, String name, String packageName,
+                                                              PluginClassLoader delegate) {
+        List<ClassLoader> candidates = new ArrayList<>();
+
+        for (ClassLoader loader : registry.getDependencyLoaders(delegate)) {
+            Set<String> packages = registry.packagesByLoader.get(loader);
+
+            if (packages == null || packages.contains(packageName)) {
+                candidates.add(loader);
+            }
+        }
+
+        // class loaders that do not belong to a plugin remain visible
+        for (ClassLoader loader : registry.unindexedLoaders) {
+            if (!(loader instanceof PluginClassLoader)) {
+                candidates.add(loader);
+            }
+        }
+
+        return resolve(name, delegate, candidates.toArray(ClassLoader[]::new));
+    }
+
+    private static Optional<Class<?>> resolve(String name, ClassLoader delegate, ClassLoader[] candidates) {
+        Class<?> res = null;
+
+        for (var loader : candidates) {
+            // skip self
+            if (delegate != null && delegate.equals(loader)) continue;
+
+            // try to load class from other class loaders
+            if (loader instanceof PluginClassLoader pcl) {
+                res = pcl.tryLoadClassDelegated(name, delegate);  // use specific method to prevent recursive calls
+            } else {
                 try {
-                    if (loader instanceof PluginClassLoader pcl) {
-                        res = pcl.loadClassDelegated(name);  // use specific method to prevent recursive calls
-                    } else {
-                        res = loader.loadClass(name);
-                    }
+                    res = loader.loadClass(name);
                 } catch (ClassNotFoundException ignored) {}
-
-                if (res != null) return Optional.of(res);
             }
+
+            if (res != null) return Optional.of(res);
         }
 
         return Optional.empty();
     }
 
+    /**
+     * Get the number of class resolutions that were answered by the negative cache.
+     * @return The number of negative cache hits.
+     */
+    public long getNegativeCacheHits() {
+        return negativeCacheHits.sum();
+    }
+
+    /**
+     * Get the number of class resolutions that were not in the negative cache and had to query the class loaders.
+     * @return The number of negative cache misses.
+     */
+    public long getNegativeCacheMisses() {
+        return negativeCacheMisses.sum();
+    }
+
+    /**
+     * Resolve the resources with a given name from the registered class loaders, other than the delegate.
+     * The class loaders are queried lazily, only when the enumeration of the previous loader is exhausted.
+     * The resource locations of every queried loader are cached by name, until the set of class loaders changes.
+     *
+     * @param name The resource name.
+     * @param delegate The class loader which requests the resources.
+     * @return The resource urls of the other class loaders, in registration order.
+     */
     @Override
     public Enumeration<URL> resolveResources(String name, ClassLoader delegate) {
-        Enumeration<URL>[] resources = getResources(name, delegate);
+        final Registry registry = this.registry;
+        final ClassLoader[] loaders = registry.loaders;
+        final AtomicReferenceArray<List<URL>> located = locatedResources(registry, name);
+        final List<Supplier<Enumeration<URL>>> sources = new ArrayList<>(loaders.length);
+
+        for (int i = 0; i < loaders.length; i++) {
+            // skip self
+            if (delegate != null && delegate.equals(loaders[i])) continue;
+
+            if (!registry.isVisible(loaders[i], delegate)) continue;
+
+            final int index = i;
+            sources.add(() -> Collections.enumeration(locateResources(name, loaders[index], located, index)));
+        }
 
-        return new CompoundEnumeration<>(resources);
+        return CompoundEnumeration.lazy(sources.iterator());
     }
 
-    @Nonnull
-    private Enumeration<URL>[] getResources(String name, ClassLoader delegate) {
-        synchronized (loaders) {
-            final int size = loaders.size();
+    private static AtomicReferenceArray<List<URL>> locatedResources(Registry registry, String name) {
+        var resources = registry.resources;
+        var located = resources.get(name);
 
-            @SuppressWarnings("unchecked")
-            Enumeration<URL>[] tmp = (Enumeration<URL>[]) new Enumeration<?>[Math.max(0, size - 1)];
+        if (located != null) return located;
 
-            Iterator<ClassLoader> iterator = loaders.iterator();
+        if (resources.size() >= RESOURCE_CACHE_SIZE) {
+            resources.clear();
+        }
 
-            for (int i = 0, j = 0, n = tmp.length; i < size && j < n; i++) {
-                ClassLoader loader = iterator.next();
+        located = new AtomicReferenceArray<>(registry.loaders.length);
+        var existing = resources.putIfAbsent(name, located);
 
-                // skip self
-                if (delegate != null && delegate.equals(loader)) continue;
+        return existing != null ? existing : located;
+    }
 
-                // try to load class from other class loaders
-                try {
-                    if (loader instanceof PluginClassLoader pcl) {
-                        tmp[j++] = pcl.getResourcesDelegated(name);  // use specific method to prevent recursive calls
-                    } else {
-                        tmp[j++] = loader.getResources(name);
+    private static List<URL> locateResources(String name, ClassLoader loader, AtomicReferenceArray<List<URL>> located,
+                                             int index) {
+        List<URL> urls = located.get(index);
+        if (urls != null) return urls;
+
+        try {
+            urls = getResources(name, loader);
+        } catch (IOException e) {
+            return List.of();  // not cached, the next lookup tries again
+        }
+
+        located.set(index, urls);
+
+        return urls;
+    }
+
+    private static List<URL> getResources(String name, ClassLoader loader) throws IOException {
+        final Enumeration<URL> resources;
+
+        if (loader instanceof PluginClassLoader pcl) {
+            resources = pcl.getResourcesDelegated(name);  // use specific method to prevent recursive calls
+        } else {
+            resources = loader.getResources(name);
+        }
+
+        return List.copyOf(Collections.list(resources));
+    }
+
+    /**
+     * An immutable snapshot of the registered class loaders and their indices.
+     * Caches derived from the loader set live in the snapshot, so that they are discarded with it.
+     */
+    private static final class Registry {
+
+        static final Registry EMPTY = Registry.of(List.of());
+
+        final ClassLoader[] loaders;
+        /* class loaders by the packages contained in their classpath */
+        final Map<String, ClassLoader[]> loadersByPackage;
+        final Map<ClassLoader, Set<String>> packagesByLoader;
+        /* class loaders whose packages are unknown; they are queried for every class */
+        final ClassLoader[] unindexedLoaders;
+        final Map<String, PluginClassLoader> pluginLoadersById;
+        /* all plugin class loaders of plugin ids with multiple loaders, in registration order; usually empty */
+        final Map<String, List<PluginClassLoader>> generations;
+        /* registration order of the class loaders; only populated, if there are multiple generations */
+        final Map<ClassLoader, Integer> positions;
+        /* transitive dependency loaders of each plugin class loader, computed on demand */
+        final Map<ClassLoader, List<ClassLoader>> dependencyLoaders = new ConcurrentHashMap<>();
+        /* names of classes that could not be resolved with this set of loaders */
+        final Set<String> unresolvable = ConcurrentHashMap.newKeySet();
+        /* resource urls of each loader, aligned with the loaders array, by resource name; filled on demand */
+        final Map<String, AtomicReferenceArray<List<URL>>> resources = new ConcurrentHashMap<>();
+
+        private Registry(ClassLoader[] loaders, Map<String, ClassLoader[]> loadersByPackage,
+                         Map<ClassLoader, Set<String>> packagesByLoader, ClassLoader[] unindexedLoaders,
+                         Map<String, PluginClassLoader> pluginLoadersById,
+                         Map<String, List<PluginClassLoader>> generations, Map<ClassLoader, Integer> positions) {
+            this.loaders = loaders;
+            this.loadersByPackage = loadersByPackage;
+            this.packagesByLoader = packagesByLoader;
+            this.unindexedLoaders = unindexedLoaders;
+            this.pluginLoadersById = pluginLoadersById;
+            this.generations = generations;
+            this.positions = positions;
+        }
+
+        static Registry of(List<ClassLoader> loaders) {
+            final Map<String, List<ClassLoader>> loadersByPackage = new HashMap<>();
+            final Map<ClassLoader, Set<String>> packagesByLoader = new HashMap<>();
+            final List<ClassLoader> unindexedLoaders = new ArrayList<>();
+            final Map<String, PluginClassLoader> pluginLoadersById = new HashMap<>();
+            final Map<String, List<PluginClassLoader>> generations = new HashMap<>();
+
+            for (ClassLoader loader : loaders) {
+                if (loader instanceof PluginClassLoader pcl) {
+                    var previous = pluginLoadersById.put(pcl.getManifest().id(), pcl);
+
+                    if (previous != null) {
+                        generations.computeIfAbsent(pcl.getManifest().id(), id -> new ArrayList<>(List.of(previous)))
+                                .add(pcl);
                     }
-                } catch (IOException ignored) {}
+                }
+
+                Optional<Set<String>> packages = loader instanceof PluginClassLoader pcl
+                        ? pcl.getPackageNames()
+                        : Optional.empty();
+
+                if (packages.isEmpty()) {
+                    unindexedLoaders.add(loader);
+                    continue;
+                }
+
+                packagesByLoader.put(loader, packages.get());
+
+                for (String packageName : packages.get()) {
+                    loadersByPackage.computeIfAbsent(packageName, pkg -> new ArrayList<>()).add(loader);
+                }
+            }
+
+            final Map<String, ClassLoader[]> packageIndex = new HashMap<>();
+            loadersByPackage.forEach((pkg, list) -> packageIndex.put(pkg, list.toArray(ClassLoader[]::new)));
+
+            final Map<ClassLoader, Integer> positions = new IdentityHashMap<>();
+
+            if (!generations.isEmpty()) {
+                for (int i = 0; i < loaders.size(); i++) {
+                    positions.put(loaders.get(i), i);
+                }
+            }
+
+            return new Registry(loaders.toArray(ClassLoader[]::new), packageIndex, packagesByLoader,
+                    unindexedLoaders.toArray(ClassLoader[]::new), pluginLoadersById, generations, positions);
+        }
+
+        /**
+         * Select the class loader of a plugin that is visible to a delegate.
+         * While a plugin is reloaded side by side, there are multiple class loaders for the same plugin id.
+         * The delegate then sees the newest of them that was registered no later than the delegate itself,
+         * so that new plugin versions link against each other, while old versions keep linking against old ones.
+         *
+         * @param id       The plugin id.
+         * @param delegate The class loader which requests classes of the plugin.
+         * @return The selected class loader, or null if there is no class loader for the plugin.
+         */
+        @Nullable
+        PluginClassLoader select(String id, @Nullable ClassLoader delegate) {
+            final List<PluginClassLoader> candidates = generations.get(id);
+
+            if (candidates == null) return pluginLoadersById.get(id);
+
+            final Integer position = delegate != null ? positions.get(delegate) : null;
+
+            if (position == null) return candidates.get(candidates.size() - 1);
+
+            PluginClassLoader selected = candidates.get(0);
+
+            for (PluginClassLoader candidate : candidates) {
+                if (positions.get(candidate) <= position) {
+                    selected = candidate;
+                }
             }
 
-            return tmp;
+            return selected;
+        }
+
+        boolean isVisible(ClassLoader loader, @Nullable ClassLoader delegate) {
+            if (generations.isEmpty() || !(loader instanceof PluginClassLoader pcl)) return true;
+
+            return select(pcl.getManifest().id(), delegate) == loader;
+        }
+
+        boolean contains(ClassLoader loader) {
+            for (ClassLoader l : loaders) {
+                if (l == loader) return true;
+            }
+
+            return false;
+        }
+
+        List<ClassLoader> getDependencyLoaders(PluginClassLoader loader) {
+            return dependencyLoaders.computeIfAbsent(loader, l -> {
+                final List<ClassLoader> result = new ArrayList<>();
+                final Set<String> visited = new HashSet<>();
+                final Deque<String> queue = new ArrayDeque<>(loader.getManifest().dependsOn());
+
+                // breadth-first, so that direct dependencies are queried first
+                while (!queue.isEmpty()) {
+                    String id = queue.poll();
+                    if (!visited.add(id)) continue;
+
+                    PluginClassLoader dependency = select(id, loader);
+                    if (dependency == null) continue;
+
+                    result.add(dependency);
+                    queue.addAll(dependency.getManifest().dependsOn());
+                }
+
+                return result;
+            });
         }
     }
 }
@@ -0,0 +1,41 @@
+package work.lclpnet.plugin.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks names that are currently being looked up on behalf of another class loader.
+ * The state is kept per thread, because delegation recursion always happens on the thread that started the lookup.
+ * Threads therefore never contend with each other.
+ */
+class DelegationGuard {
+
+    private final ThreadLocal<Map<String, Integer>> active = new ThreadLocal<>();
+
+    void enter(String name) {
+        var names = active.get();
+
+        if (names == null) {
+            names = new HashMap<>();
+            active.set(names);
+        }
+
+        names.merge(name, 1, Integer::sum);
+    }
+
+    void exit(String name) {
+        var names = active.get();
+        if (names == null) return;
+
+        names.computeIfPresent(name, (key, count) -> count <= 1 ? null : count - 1);
+
+        if (names.isEmpty()) {
+            active.remove();  // do not keep an empty map per thread
+        }
+    }
+
+    boolean isActive(String name) {
+        var names = active.get();
+        return names != null && names.containsKey(name);
+    }
+}
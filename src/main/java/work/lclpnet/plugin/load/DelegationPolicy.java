@@ -0,0 +1,145 @@
+package work.lclpnet.plugin.load;
+
+import work.lclpnet.plugin.manifest.DelegationRules;
+import work.lclpnet.plugin.util.ClassPathEntries;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decides where a {@link PluginClassLoader} looks for a class, by the package of the class.
+ * Packages include their subpackages; the most specific package decides.
+ */
+public final class DelegationPolicy {
+
+    public static final DelegationPolicy DEFAULT = new DelegationPolicy(Map.of());
+
+    private final Map<String, Route> routes;
+
+    private DelegationPolicy(Map<String, Route> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Create a delegation policy from the delegation rules of a plugin manifest.
+     *
+     * @param rules The delegation rules.
+     * @return The delegation policy.
+     */
+    public static DelegationPolicy of(DelegationRules rules) {
+        if (rules.isEmpty()) return DEFAULT;
+
+        return builder()
+                .neverDelegate(rules.neverDelegate())
+                .childFirst(rules.childFirst())
+                .parentOnly(rules.parentOnly())
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the route for a class.
+     *
+     * @param className The binary name of the class.
+     * @return The route a class loader should take to find the class.
+     */
+    public Route route(String className) {
+        if (routes.isEmpty()) return Route.DEFAULT;
+
+        String packageName = ClassPathEntries.packageOf(className);
+
+        while (!packageName.isEmpty()) {
+            Route route = routes.get(packageName);
+            if (route != null) return route;
+
+            packageName = ClassPathEntries.packageOf(packageName);
+        }
+
+        return Route.DEFAULT;
+    }
+
+    /**
+     * Check whether a class may be resolved from other plugins.
+     *
+     * @param className The binary name of the class.
+     * @return True, if other plugins may provide the class.
+     */
+    public boolean mayDelegate(String className) {
+        Route route = route(className);
+        return route == Route.DEFAULT || route == Route.CHILD_FIRST;
+    }
+
+    public enum Route {
+        /** The parent class loader, the plugin itself, then the other plugins. */
+        DEFAULT,
+        /** Only the parent class loader. */
+        PARENT_ONLY,
+        /** The plugin itself, the parent class loader, then the other plugins. */
+        CHILD_FIRST,
+        /** The parent class loader, then the plugin itself. Other plugins are never asked. */
+        NEVER_DELEGATE
+    }
+
+    public static class Builder {
+
+        private final Map<String, Route> routes = new HashMap<>();
+
+        private Builder() {}
+
+        /**
+         * Load packages only from the parent class loader, e.g. the packages of the host api.
+         * @param packages The package names.
+         * @return This builder.
+         */
+        public Builder parentOnly(Iterable<String> packages) {
+            return put(packages, Route.PARENT_ONLY);
+        }
+
+        public Builder parentOnly(String... packages) {
+            return parentOnly(List.of(packages));
+        }
+
+        /**
+         * Load packages from the plugin itself, before asking the parent class loader.
+         * @param packages The package names.
+         * @return This builder.
+         */
+        public Builder childFirst(Iterable<String> packages) {
+            return put(packages, Route.CHILD_FIRST);
+        }
+
+        public Builder childFirst(String... packages) {
+            return childFirst(List.of(packages));
+        }
+
+        /**
+         * Never resolve packages from other plugins.
+         * @param packages The package names.
+         * @return This builder.
+         */
+        public Builder neverDelegate(Iterable<String> packages) {
+            return put(packages, Route.NEVER_DELEGATE);
+        }
+
+        public Builder neverDelegate(String... packages) {
+            return neverDelegate(List.of(packages));
+        }
+
+        private Builder put(Iterable<String> packages, Route route) {
+            for (String packageName : packages) {
+                routes.put(Objects.requireNonNull(packageName), route);
+            }
+
+            return this;
+        }
+
+        public DelegationPolicy build() {
+            return routes.isEmpty() ? DEFAULT : new DelegationPolicy(Map.copyOf(routes));
+        }
+    }
+}
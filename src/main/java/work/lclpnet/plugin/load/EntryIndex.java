@@ -0,0 +1,88 @@
+package work.lclpnet.plugin.load;
+
+import work.lclpnet.plugin.util.ClassPathEntries;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * An immutable index of the entry names on a plugin classpath.
+ * It answers whether a class or resource can exist on the classpath, without touching the jar files.
+ */
+public final class EntryIndex {
+
+    private final Set<String> entries;
+    private final Set<String> packageNames;
+
+    private EntryIndex(Set<String> entries, Set<String> packageNames) {
+        this.entries = entries;
+        this.packageNames = packageNames;
+    }
+
+    /**
+     * Build the entry index of a classpath.
+     *
+     * @param urls The classpath urls.
+     * @return The index, or an empty optional if the classpath cannot be listed, e.g. for non-file urls or
+     * directories, whose contents can change after the index was built.
+     * @throws IOException If a jar file could not be read.
+     */
+    public static Optional<EntryIndex> of(URL[] urls) throws IOException {
+        var files = ClassPathEntries.list(urls);
+        if (files.isEmpty()) return Optional.empty();
+
+        final Set<String> entries = new HashSet<>(files.get());
+
+        // directories can be requested as resources, too
+        for (String file : files.get()) {
+            int slash = file.indexOf('/');
+
+            while (slash != -1) {
+                entries.add(file.substring(0, slash + 1));
+                slash = file.indexOf('/', slash + 1);
+            }
+        }
+
+        final Set<String> packageNames = ClassPathEntries.packageNames(files.get());
+
+        return Optional.of(new EntryIndex(Set.copyOf(entries), Set.copyOf(packageNames)));
+    }
+
+    /**
+     * Check whether an entry might exist on the classpath.
+     *
+     * @param name The entry name, e.g. "work/lclpnet/plugin/Plugin.class" or "META-INF/services/".
+     * @return False, if the entry definitely does not exist.
+     */
+    public boolean mightContain(String name) {
+        // the root and names that are not normalized are resolved by the url class path; do not filter them
+        if (name.isEmpty() || name.startsWith("/") || name.contains("\\") || name.contains("./")
+                || name.contains("..") || name.endsWith("/.")) return true;
+
+        return entries.contains(name) || entries.contains(name + "/");
+    }
+
+    /**
+     * Get the names of all packages which contain classes on the classpath.
+     * @return The binary package names.
+     */
+    public Set<String> getPackageNames() {
+        return packageNames;
+    }
+
+    /**
+     * Get the names of all classes on the classpath.
+     * The names are computed on every call; callers should keep the result, if they need it more than once.
+     * @return The binary class names.
+     */
+    public Set<String> getClassNames() {
+        return ClassPathEntries.classNames(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
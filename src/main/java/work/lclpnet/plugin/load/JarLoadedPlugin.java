@@ -35,6 +35,10 @@ public class JarLoadedPlugin implements LoadedPlugin {
         this.classLoader = null;
     }
 
+    public ClassLoaderContainer getClassLoaderContainer() {
+        return classLoaderContainer;
+    }
+
     @Override
     public Object getSource() {
         return source;
@@ -0,0 +1,337 @@
+package work.lclpnet.plugin.load;
+
+import work.lclpnet.plugin.util.ClassPathHash;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * A class source that keeps the uncompressed class files of a plugin in a memory-mapped file.
+ * <p>
+ * The store file is built once per classpath hash, by inflating every class file of the plugin jars.
+ * Afterwards, classes are defined directly from the mapped file, without inflating or copying them.
+ * When a plugin jar changes, a new store is built and outdated stores of the plugin are deleted.
+ * Store files that are corrupt or truncated are treated like missing ones and rebuilt.
+ * </p>
+ * <p>
+ * Multi-release jars are read for the current runtime version. If a jar references other jars with the
+ * manifest Class-Path attribute, the store stays empty and the plugin is loaded from its urls,
+ * because the referenced jars take precedence over later urls and are not covered by the classpath hash.
+ * </p>
+ */
+public class MappedClassStore implements ClassSource {
+
+    private static final int MAGIC = 0x504c4353;  // "PLCS"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".classes";
+
+    private final Map<String, Slot> slots;
+    private final URL[] urls;
+    private volatile MappedByteBuffer buffer;
+
+    private MappedClassStore(Map<String, Slot> slots, URL[] urls, MappedByteBuffer buffer) {
+        this.slots = slots;
+        this.urls = urls;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a factory for mapped class stores.
+     *
+     * @param directory The directory to keep the store files in.
+     * @return A factory that opens or builds the store for each plugin.
+     */
+    public static ClassSourceFactory factory(Path directory) {
+        return (manifest, urls, hash) -> open(directory, manifest.id(), urls, hash);
+    }
+
+    /**
+     * Open the class store of a plugin. If there is no store for the current classpath contents, it is built first.
+     *
+     * @param directory The directory to keep the store files in.
+     * @param pluginId  The plugin id.
+     * @param urls      The classpath urls of the plugin.
+     * @return The class store, or an empty optional if the classpath contains urls that are not local files.
+     * @throws IOException If the store could not be built or opened.
+     */
+    public static Optional<ClassSource> open(Path directory, String pluginId, URL[] urls) throws IOException {
+        return open(directory, pluginId, urls, ClassPathHash.of(urls));
+    }
+
+    /**
+     * Open the class store of a plugin. If there is no store for the current classpath contents, it is built first.
+     *
+     * @param directory     The directory to keep the store files in.
+     * @param pluginId      The plugin id.
+     * @param urls          The classpath urls of the plugin.
+     * @param classPathHash The hash of the classpath, which might already be computed.
+     * @return The class store, or an empty optional if the classpath contains urls that are not local files.
+     * @throws IOException If the store could not be built or opened.
+     */
+    public static Optional<ClassSource> open(Path directory, String pluginId, URL[] urls,
+                                             ClassPathHash classPathHash) throws IOException {
+        var hash = classPathHash.get();
+        if (hash.isEmpty()) return Optional.empty();
+
+        final String safeId = pluginId.replaceAll("[^A-Za-z0-9._]", "_");
+        final Path file = directory.resolve(safeId + "-" + hash.get() + EXTENSION);
+
+        if (Files.isRegularFile(file)) {
+            MappedClassStore store = map(file, urls);
+            if (store != null) return Optional.of(store);
+
+            // an invalid store is a cache miss; it is replaced below
+        }
+
+        build(directory, file, urls);
+        deleteOutdated(directory, safeId, file);
+
+        MappedClassStore store = map(file, urls);
+
+        if (store == null) {
+            throw new IOException("Invalid class store %s".formatted(file));
+        }
+
+        return Optional.of(store);
+    }
+
+    @Nullable
+    @Override
+    public ClassFile find(String className) {
+        var buffer = this.buffer;
+        if (buffer == null) return null;
+
+        Slot slot = slots.get(className);
+        if (slot == null) return null;
+
+        ByteBuffer bytes = buffer.slice(slot.offset(), slot.length());
+        URL codeSource = slot.urlIndex() < urls.length ? urls[slot.urlIndex()] : null;
+
+        return new ClassFile(bytes, codeSource);
+    }
+
+    @Override
+    public void close() {
+        // mapped buffers cannot be unmapped explicitly; the mapping is released once the buffer is collected
+        buffer = null;
+    }
+
+    /**
+     * Map a store file and read its header.
+     *
+     * @param file The store file.
+     * @param urls The classpath urls of the plugin.
+     * @return The class store, or null if the file is no valid store.
+     * @throws IOException If the file could not be mapped.
+     */
+    @Nullable
+    private static MappedClassStore map(Path file, URL[] urls) throws IOException {
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        final int limit = buffer.limit();
+
+        if (limit < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+        final int count = buffer.getInt();
+
+        // every slot takes at least 14 bytes of the header
+        if (count < 0 || count > (limit - 12) / 14) return null;
+
+        final Map<String, Slot> slots = new HashMap<>(count * 4 / 3 + 1);
+
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 2) return null;
+
+            int nameLength = buffer.getShort() & 0xffff;
+            if (buffer.remaining() < nameLength + 12) return null;
+
+            byte[] name = new byte[nameLength];
+            buffer.get(name);
+
+            var slot = new Slot(buffer.getInt(), buffer.getInt(), buffer.getInt());
+
+            // the class files follow the header and must lie within the file
+            if (slot.urlIndex() < 0 || slot.offset() < 0 || slot.length() < 0
+                    || (long) slot.offset() + slot.length() > limit) {
+                return null;
+            }
+
+            slots.put(new String(name, StandardCharsets.UTF_8), slot);
+        }
+
+        for (Slot slot : slots.values()) {
+            if (slot.offset() < buffer.position()) return null;
+        }
+
+        return new MappedClassStore(slots, urls, buffer);
+    }
+
+    private static void build(Path directory, Path file, URL[] urls) throws IOException {
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        final Map<String, Integer> urlIndices = new HashMap<>();
+
+        for (int i = 0; i < urls.length; i++) {
+            final int urlIndex = i;
+            boolean complete = readClasses(urls[i], (name, bytes) -> {
+                // the first url containing a class wins, like in URLClassLoader
+                if (classes.putIfAbsent(name, bytes) == null) {
+                    urlIndices.put(name, urlIndex);
+                }
+            });
+
+            if (!complete) {
+                // the referenced jars would precede the following urls; the empty store leaves all classes to the urls
+                classes.clear();
+                break;
+            }
+        }
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(header);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(classes.size());
+
+        // compute the header size first, so that the class file offsets are absolute
+        int headerSize = 12;
+        for (String name : classes.keySet()) {
+            headerSize += 2 + name.getBytes(StandardCharsets.UTF_8).length + 12;
+        }
+
+        int offset = headerSize;
+
+        for (var entry : classes.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int length = entry.getValue().length;
+
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeInt(urlIndices.get(entry.getKey()));
+            out.writeInt(offset);
+            out.writeInt(length);
+
+            offset += length;
+        }
+
+        out.flush();
+
+        Files.createDirectories(directory);
+
+        // write to a temporary file first, so that concurrent readers never map a partial store
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+        try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            header.writeTo(fileOut);
+
+            for (byte[] bytes : classes.values()) {
+                fileOut.write(bytes);
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the class files of a classpath entry.
+     *
+     * @param url      The classpath url.
+     * @param consumer The consumer of the class files.
+     * @return False, if the entry is a jar that references other jars with the manifest Class-Path attribute.
+     * @throws IOException If the entry could not be read.
+     */
+    private static boolean readClasses(URL url, ClassConsumer consumer) throws IOException {
+        Path path;
+        try {
+            path = Path.of(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid classpath url %s".formatted(url), e);
+        }
+
+        if (Files.isDirectory(path)) {
+            final List<Path> files;
+
+            try (Stream<Path> stream = Files.walk(path)) {
+                files = stream.filter(f -> f.toString().endsWith(".class") && Files.isRegularFile(f)).toList();
+            }
+
+            for (Path classFile : files) {
+                String entryName = path.relativize(classFile).toString().replace(path.getFileSystem().getSeparator(), "/");
+                consumer.accept(className(entryName), Files.readAllBytes(classFile));
+            }
+        } else if (Files.isRegularFile(path)) {
+            // read multi-release jars like the class loader does, with the classes for the current runtime
+            try (JarFile jar = new JarFile(path.toFile(), true, ZipFile.OPEN_READ, Runtime.version())) {
+                if (hasClassPath(jar)) return false;
+
+                // versioned entries are named like the base entries they replace
+                List<JarEntry> entries = jar.versionedStream().toList();
+
+                for (JarEntry entry : entries) {
+                    String entryName = entry.getName();
+
+                    if (entry.isDirectory() || !entryName.endsWith(".class") || entryName.startsWith("META-INF/")) continue;
+
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        consumer.accept(className(entryName), in.readAllBytes());
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean hasClassPath(JarFile jar) throws IOException {
+        Manifest manifest = jar.getManifest();
+        if (manifest == null) return false;
+
+        String classPath = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+
+        return classPath != null && !classPath.isBlank();
+    }
+
+    private static String className(String entryName) {
+        return entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+    }
+
+    private static void deleteOutdated(Path directory, String safeId, Path current) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, safeId + "-*" + EXTENSION)) {
+            for (Path file : files) {
+                if (file.equals(current)) continue;
+
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // the store might still be mapped on some platforms; it will be deleted on the next build
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private interface ClassConsumer {
+        void accept(String className, byte[] bytes) throws IOException;
+    }
+
+    private record Slot(int urlIndex, int offset, int length) {}
+}
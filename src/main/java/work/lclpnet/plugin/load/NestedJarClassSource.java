@@ -0,0 +1,336 @@
+package work.lclpnet.plugin.load;
+
+import work.lclpnet.plugin.util.ClassPathEntries;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.*;
+
+/**
+ * A class source for jar files that are nested in a plugin jar.
+ * <p>
+ * The nested jars are read into memory when the source is opened, so that they never have to be extracted to disk.
+ * Only the compressed jar and an index of its central directory are kept; entries are inflated when they are requested.
+ * Resources of the nested jars are served from memory as well, through urls with the "nested" protocol.
+ * </p>
+ */
+public class NestedJarClassSource implements ClassSource {
+
+    public static final String PROTOCOL = "nested";
+    /* zip record signatures and fixed header sizes */
+    private static final int LOC_SIGNATURE = 0x04034b50, LOC_HEADER = 30;
+    private static final int CEN_SIGNATURE = 0x02014b50, CEN_HEADER = 46;
+    private static final int END_SIGNATURE = 0x06054b50, END_HEADER = 22;
+
+    private final URLStreamHandler handler = new Handler();
+    private final Set<String> packageNames;
+    private volatile List<Library> libraries;
+
+    private NestedJarClassSource(List<Library> libraries) {
+        this.libraries = libraries;
+
+        Set<String> packageNames = new HashSet<>();
+
+        for (Library library : libraries) {
+            packageNames.addAll(ClassPathEntries.packageNames(library.entries().keySet()));
+        }
+
+        this.packageNames = Set.copyOf(packageNames);
+    }
+
+    /**
+     * Read nested jars from a plugin classpath.
+     *
+     * @param urls      The classpath urls of the plugin.
+     * @param libraries The entry names of the nested jars, in classpath order.
+     * @return The class source.
+     * @throws IOException If a nested jar could not be found or read.
+     */
+    public static NestedJarClassSource open(URL[] urls, List<String> libraries) throws IOException {
+        List<Library> result = new ArrayList<>(libraries.size());
+
+        for (String path : libraries) {
+            result.add(readLibrary(urls, path));
+        }
+
+        return new NestedJarClassSource(List.copyOf(result));
+    }
+
+    @Nullable
+    @Override
+    public ClassFile find(String className) {
+        final String entryName = className.replace('.', '/').concat(".class");
+
+        for (Library library : libraries) {
+            Entry entry = library.entries().get(entryName);
+            if (entry == null) continue;
+
+            try {
+                return new ClassFile(library.read(entry), library.url());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read %s from %s".formatted(entryName, library.url()), e);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public List<URL> findResources(String name) {
+        List<URL> urls = null;
+
+        for (Library library : libraries) {
+            if (!library.entries().containsKey(name)) continue;
+
+            if (urls == null) urls = new ArrayList<>(1);
+
+            urls.add(resourceUrl(library, name));
+        }
+
+        return urls != null ? urls : List.of();
+    }
+
+    @Override
+    public Set<String> getPackageNames() {
+        return packageNames;
+    }
+
+    @Override
+    public void close() {
+        libraries = List.of();
+    }
+
+    @SuppressWarnings("deprecation")
+    private URL resourceUrl(Library library, String name) {
+        try {
+            // the handler is passed explicitly, as the protocol is not registered globally
+            return new URL(PROTOCOL, null, -1, library.url().toExternalForm() + "!/" + name, handler);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private Library lookup(String file) {
+        for (Library library : libraries) {
+            if (file.startsWith(library.url().toExternalForm() + "!/")) {
+                return library;
+            }
+        }
+
+        return null;
+    }
+
+    private static Library readLibrary(URL[] urls, String path) throws IOException {
+        for (URL url : urls) {
+            if (!"file".equals(url.getProtocol())) continue;
+
+            Path classPath;
+            try {
+                classPath = Path.of(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                continue;
+            }
+
+            if (Files.isDirectory(classPath)) {
+                Path file = classPath.resolve(path);
+
+                if (Files.isRegularFile(file)) {
+                    return Library.of(file.toUri().toURL(), Files.readAllBytes(file));
+                }
+            } else if (Files.isRegularFile(classPath)) {
+                try (JarFile jar = new JarFile(classPath.toFile())) {
+                    JarEntry entry = jar.getJarEntry(path);
+                    if (entry == null) continue;
+
+                    final byte[] bytes;
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        bytes = in.readAllBytes();
+                    }
+
+                    return Library.of(new URL("jar:" + url.toExternalForm() + "!/" + path), bytes);
+                }
+            }
+        }
+
+        throw new FileNotFoundException("Nested jar '%s' not found".formatted(path));
+    }
+
+    /**
+     * Index the file entries of a jar by reading its central directory.
+     * Zip64 archives are not supported, which limits nested jars to 4 GiB and 65535 entries.
+     */
+    private static Map<String, Entry> readEntries(byte[] jar) throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+        final int end = findEndOfCentralDirectory(buf);
+
+        final int count = buf.getShort(end + 10) & 0xffff;
+        int pos = buf.getInt(end + 16);
+
+        if (count == 0xffff || pos == -1) throw new ZipException("Zip64 nested jars are not supported");
+
+        final Map<String, Entry> entries = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            if (pos < 0 || pos + CEN_HEADER > jar.length || buf.getInt(pos) != CEN_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+
+            int method = buf.getShort(pos + 10) & 0xffff;
+            int compressedSize = buf.getInt(pos + 20);
+            int size = buf.getInt(pos + 24);
+            int nameLength = buf.getShort(pos + 28) & 0xffff;
+            int extraLength = buf.getShort(pos + 30) & 0xffff;
+            int commentLength = buf.getShort(pos + 32) & 0xffff;
+            int localHeader = buf.getInt(pos + 42);
+
+            String name = new String(jar, pos + CEN_HEADER, nameLength, StandardCharsets.UTF_8);
+            pos += CEN_HEADER + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/")) continue;
+
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                throw new ZipException("Unsupported compression method %d of entry %s".formatted(method, name));
+            }
+
+            if (localHeader < 0 || localHeader + LOC_HEADER > jar.length || buf.getInt(localHeader) != LOC_SIGNATURE) {
+                throw new ZipException("Invalid local header of entry %s".formatted(name));
+            }
+
+            // the extra field of the local header may differ from the one in the central directory
+            int offset = localHeader + LOC_HEADER + (buf.getShort(localHeader + 26) & 0xffff)
+                    + (buf.getShort(localHeader + 28) & 0xffff);
+
+            if (compressedSize < 0 || size < 0 || offset + compressedSize > jar.length) {
+                throw new ZipException("Invalid size of entry %s".formatted(name));
+            }
+
+            entries.put(name, new Entry(offset, compressedSize, size, method == ZipEntry.DEFLATED));
+        }
+
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buf) throws ZipException {
+        // the end record is followed by a comment of at most 65535 bytes
+        final int last = buf.limit() - END_HEADER;
+        final int first = Math.max(0, last - 0xffff);
+
+        for (int pos = last; pos >= first; pos--) {
+            if (buf.getInt(pos) == END_SIGNATURE) return pos;
+        }
+
+        throw new ZipException("Nested jar has no central directory");
+    }
+
+    /**
+     * A nested jar.
+     *
+     * @param url     The location of the nested jar.
+     * @param jar     The compressed jar.
+     * @param entries The file entries of the jar by name.
+     */
+    private record Library(URL url, byte[] jar, Map<String, Entry> entries) {
+
+        static Library of(URL url, byte[] jar) throws IOException {
+            return new Library(url, jar, readEntries(jar));
+        }
+
+        ByteBuffer read(Entry entry) throws IOException {
+            if (!entry.deflated()) {
+                return ByteBuffer.wrap(jar, entry.offset(), entry.size()).slice();
+            }
+
+            final Inflater inflater = new Inflater(true);
+
+            try {
+                inflater.setInput(jar, entry.offset(), entry.compressedSize());
+
+                byte[] bytes = new byte[entry.size()];
+                int length = 0;
+
+                while (length < bytes.length && !inflater.finished()) {
+                    int read = inflater.inflate(bytes, length, bytes.length - length);
+
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+
+                    length += read;
+                }
+
+                if (length != bytes.length) throw new ZipException("Truncated entry in %s".formatted(url));
+
+                return ByteBuffer.wrap(bytes);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid compressed entry in %s: %s".formatted(url, e.getMessage()));
+            } finally {
+                inflater.end();
+            }
+        }
+
+        InputStream open(Entry entry) {
+            InputStream in = new ByteArrayInputStream(jar, entry.offset(), entry.compressedSize());
+
+            if (!entry.deflated()) return in;
+
+            final Inflater inflater = new Inflater(true);
+
+            return new InflaterInputStream(in, inflater) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+    }
+
+    /**
+     * The location of an entry in a nested jar.
+     *
+     * @param offset         The offset of the entry data in the jar.
+     * @param compressedSize The size of the entry data in the jar.
+     * @param size           The uncompressed size of the entry.
+     * @param deflated       Whether the entry data is deflated, otherwise it is stored as is.
+     */
+    private record Entry(int offset, int compressedSize, int size, boolean deflated) {}
+
+    private final class Handler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            final String file = url.getFile();
+            final Library library = lookup(file);
+            final Entry entry = library != null
+                    ? library.entries().get(file.substring(library.url().toExternalForm().length() + 2))
+                    : null;
+
+            if (entry == null) throw new FileNotFoundException(url.toExternalForm());
+
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return library.open(entry);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    return entry.size();
+                }
+            };
+        }
+    }
+}
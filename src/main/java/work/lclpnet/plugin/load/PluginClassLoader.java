@@ -2,24 +2,43 @@ package work.lclpnet.plugin.load;
 
 import work.lclpnet.plugin.Plugin;
 import work.lclpnet.plugin.manifest.PluginManifest;
+import work.lclpnet.plugin.util.ClassPathEntries;
 import work.lclpnet.plugin.util.CompoundEnumeration;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
 
 public class PluginClassLoader extends URLClassLoader {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     private final PluginManifest manifest;
+    private final DelegationPolicy delegationPolicy;
     private final ClassResolver classResolver;
     private final ResourceResolver resourceResolver;
-    private final Map<String, Integer> delegatedClassLoading = new HashMap<>();
-    private final Map<String, Integer> delegatedResourceLoading = new HashMap<>();
+    @Nullable
+    private final ClassSource classSource;
+    @Nullable
+    private final ClassSource librarySource;
+    private final DelegationGuard delegatedClassLoading = new DelegationGuard();
+    private final DelegationGuard delegatedResourceLoading = new DelegationGuard();
+    @Nullable
+    private final EntryIndex entryIndex;
+    @Nullable
+    private final Set<String> packageNames;
+    private volatile Queue<String> recordedClasses = null;
+    @Nullable
+    private volatile ClassLoadingProfiler.PluginProfile profile = null;
 
     /**
      * Creates a new JarClassLoader for the specified url.
@@ -46,11 +65,102 @@ public class PluginClassLoader extends URLClassLoader {
      */
     public PluginClassLoader(URL[] urls, ClassLoader parent, PluginManifest manifest, ClassResolver classResolver,
                              ResourceResolver resourceResolver) {
+        this(urls, parent, manifest, classResolver, resourceResolver, null);
+    }
+
+    /**
+     * Creates a new JarClassLoader for the specified urls.
+     *
+     * @param urls             The urls to use as classpath.
+     * @param parent           A parent class loader used to find other classes.
+     * @param manifest         The plugin manifest.
+     * @param classResolver    A class resolver for plugin class loaders interop between each other.
+     * @param resourceResolver A resource resolver for plugin class laoders interop between each other.
+     * @param classSource      An optional class source, which is asked for classes before the urls.
+     *                         It is closed together with this class loader.
+     */
+    public PluginClassLoader(URL[] urls, ClassLoader parent, PluginManifest manifest, ClassResolver classResolver,
+                             ResourceResolver resourceResolver, @Nullable ClassSource classSource) {
+        this(urls, parent, manifest, classResolver, resourceResolver, classSource,
+                DelegationPolicy.of(Objects.requireNonNull(manifest).delegation()));
+    }
+
+    /**
+     * Creates a new JarClassLoader for the specified urls.
+     *
+     * @param urls             The urls to use as classpath.
+     * @param parent           A parent class loader used to find other classes.
+     * @param manifest         The plugin manifest.
+     * @param classResolver    A class resolver for plugin class loaders interop between each other.
+     * @param resourceResolver A resource resolver for plugin class laoders interop between each other.
+     * @param classSource      An optional class source, which is asked for classes before the urls.
+     *                         It is closed together with this class loader.
+     * @param delegationPolicy The policy that decides where classes are looked up.
+     */
+    public PluginClassLoader(URL[] urls, ClassLoader parent, PluginManifest manifest, ClassResolver classResolver,
+                             ResourceResolver resourceResolver, @Nullable ClassSource classSource,
+                             DelegationPolicy delegationPolicy) {
+        this(urls, parent, manifest, classResolver, resourceResolver, classSource, null, delegationPolicy);
+    }
+
+    /**
+     * Creates a new JarClassLoader for the specified urls.
+     *
+     * @param urls             The urls to use as classpath.
+     * @param parent           A parent class loader used to find other classes.
+     * @param manifest         The plugin manifest.
+     * @param classResolver    A class resolver for plugin class loaders interop between each other.
+     * @param resourceResolver A resource resolver for plugin class laoders interop between each other.
+     * @param classSource      An optional class source, which is asked for classes before the urls.
+     *                         It is closed together with this class loader.
+     * @param librarySource    An optional class source for the libraries of the plugin, e.g. nested jars,
+     *                         which is asked for classes and resources after the urls.
+     *                         It is closed together with this class loader.
+     * @param delegationPolicy The policy that decides where classes are looked up.
+     */
+    public PluginClassLoader(URL[] urls, ClassLoader parent, PluginManifest manifest, ClassResolver classResolver,
+                             ResourceResolver resourceResolver, @Nullable ClassSource classSource,
+                             @Nullable ClassSource librarySource, DelegationPolicy delegationPolicy) {
         super(Objects.requireNonNull(urls), parent);
 
         this.manifest = Objects.requireNonNull(manifest);
+        this.delegationPolicy = Objects.requireNonNull(delegationPolicy);
         this.classResolver = classResolver;
         this.resourceResolver = resourceResolver;
+        this.classSource = classSource;
+        this.librarySource = librarySource;
+        this.entryIndex = buildEntryIndex(urls);
+        this.packageNames = collectPackageNames(entryIndex, classSource, librarySource);
+    }
+
+    @Nullable
+    private static EntryIndex buildEntryIndex(URL[] urls) {
+        try {
+            return EntryIndex.of(urls).orElse(null);
+        } catch (IOException e) {
+            return null;  // lookups are not filtered
+        }
+    }
+
+    @Nullable
+    private static Set<String> collectPackageNames(@Nullable EntryIndex entryIndex, @Nullable ClassSource... sources) {
+        if (entryIndex == null) return null;
+
+        Set<String> packageNames = null;
+
+        for (ClassSource source : sources) {
+            if (source == null || source.getPackageNames().isEmpty()) continue;
+
+            if (packageNames == null) packageNames = new HashSet<>(entryIndex.getPackageNames());
+
+            packageNames.addAll(source.getPackageNames());
+        }
+
+        return packageNames != null ? Set.copyOf(packageNames) : entryIndex.getPackageNames();
+    }
+
+    public PluginManifest getManifest() {
+        return manifest;
     }
 
     public Plugin loadPlugin() throws ReflectiveOperationException {
@@ -83,90 +193,346 @@ public class PluginClassLoader extends URLClassLoader {
         return (Plugin) constructor.newInstance();
     }
 
+    /**
+     * Get the names of all packages which contain classes in this loader's classpath.
+     *
+     * @return The package names, or an empty optional if the classpath cannot be listed.
+     */
+    public Optional<Set<String>> getPackageNames() {
+        return Optional.ofNullable(packageNames);
+    }
+
+    /**
+     * Get the index of the entries in this loader's classpath.
+     *
+     * @return The entry index, or an empty optional if the classpath cannot be listed.
+     */
+    public Optional<EntryIndex> getEntryIndex() {
+        return Optional.ofNullable(entryIndex);
+    }
+
+    /**
+     * Set a profiler that records the class loading statistics of this loader.
+     *
+     * @param profiler The profiler, or null to stop profiling.
+     */
+    public void setProfiler(@Nullable ClassLoadingProfiler profiler) {
+        this.profile = profiler != null ? profiler.profile(manifest.id()) : null;
+    }
+
+    @Nullable
+    ClassLoadingProfiler.PluginProfile getProfile() {
+        return profile;
+    }
+
     @Override
-    protected Class<?> findClass(String name) throws ClassNotFoundException {
-        try {
-            Class<?> res = super.findClass(name);
-            if (res != null) return res;
-        } catch (ClassNotFoundException ignored) {}
-
-        // check if class load was delegated by another PluginClassLoader
-        synchronized (delegatedClassLoading) {
-            if (this.delegatedClassLoading.containsKey(name)) {
-                throw new ClassNotFoundException(name);
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        final DelegationPolicy.Route route = delegationPolicy.route(name);
+
+        // the default order is implemented by ClassLoader; findClass takes care of never-delegate packages
+        if (route == DelegationPolicy.Route.DEFAULT || route == DelegationPolicy.Route.NEVER_DELEGATE) {
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> res = findLoadedClass(name);
+
+            if (res == null) {
+                if (route == DelegationPolicy.Route.PARENT_ONLY) {
+                    // the class is not looked up in the plugin or the container at all
+                    res = findParentClass(name);
+                } else {
+                    res = findLocalClass(name);
+
+                    if (res == null) res = findParentClass(name);
+                    if (res == null) res = tryFindClass(name);
+                }
+
+                if (res == null) throw new ClassNotFoundException(name);
             }
+
+            if (resolve) resolveClass(res);
+
+            return res;
+        }
+    }
+
+    @Nullable
+    private Class<?> findParentClass(String name) {
+        final ClassLoader parent = getParent();
+
+        try {
+            return parent != null ? parent.loadClass(name) : Class.forName(name, false, null);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> res = tryFindClass(name);
+
+        // only the outermost lookup creates an exception
+        if (res == null) throw new ClassNotFoundException(name);
+
+        return res;
+    }
+
+    /**
+     * Finds a class in the plugin classpath or, if it is not found there, from the other class loaders.
+     * In contrast to {@link #findClass(String)}, misses do not create an exception.
+     *
+     * @param name The binary name of the class.
+     * @return The class, or null if it could not be found.
+     */
+    @Nullable
+    protected Class<?> tryFindClass(String name) {
+        final var profile = this.profile;
+        final long start = profile != null ? profile.start() : ClassLoadingProfiler.NOT_SAMPLED;
+
+        Class<?> res = findLocalClass(name);
+
+        if (res != null) {
+            if (profile != null) profile.recordFind(res, true, start);
+            return res;
+        }
+
+        // check if class load was delegated by another PluginClassLoader; the requester records the lookup
+        if (delegatedClassLoading.isActive(name)) return null;
+
+        // skip the other class loaders, if they must not provide the class
+        if (!delegationPolicy.mayDelegate(name)) {
+            if (profile != null) profile.recordFind(null, false, start);
+            return null;
         }
 
         // class is not in our plugin jar, ask the other class loaders
-        var otherPluginClass = this.classResolver.resolve(name, this);
+        res = this.classResolver.resolve(name, this).orElse(null);
+
+        if (profile != null) profile.recordFind(res, false, start);
 
-        if (otherPluginClass.isPresent()) {
-            return otherPluginClass.get();
+        return res;
+    }
+
+    @Nullable
+    private Class<?> findLocalClass(String name) {
+        Class<?> res = findSourceClass(classSource, name);
+
+        if (res == null) {
+            res = findUrlClass(name);
         }
 
-        throw new ClassNotFoundException(name);
+        // classes of the plugin jar itself take precedence over those of its libraries
+        if (res == null) {
+            res = findSourceClass(librarySource, name);
+        }
+
+        var recorded = recordedClasses;
+        if (res != null && recorded != null) recorded.add(name);
+
+        return res;
     }
 
-    Class<?> loadClassDelegated(String name) throws ClassNotFoundException {
-        synchronized (delegatedClassLoading) {
-            incr(delegatedClassLoading, name);
+    @Nullable
+    private Class<?> findSourceClass(@Nullable ClassSource source, String name) {
+        if (source == null) return null;
+
+        var classFile = source.find(name);
+        if (classFile == null) return null;
+
+        definePackageIfAbsent(ClassPathEntries.packageOf(name));
+
+        var codeSource = new CodeSource(classFile.codeSource(), (CodeSigner[]) null);
+
+        // defines the class directly from the buffer, without copying it into an array
+        return defineClass(name, classFile.bytes(), codeSource);
+    }
+
+    private void definePackageIfAbsent(String packageName) {
+        if (packageName.isEmpty() || getDefinedPackage(packageName) != null) return;
+
+        try {
+            definePackage(packageName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException ignored) {
+            // defined concurrently by another thread
         }
+    }
+
+    @Nullable
+    private Class<?> findUrlClass(String name) {
+        // check for the class file first, URLClassLoader signals a miss with an exception
+        String fileName = classFileName(name);
+        if (entryIndex != null ? !entryIndex.mightContain(fileName) : findResource(fileName) == null) return null;
 
         try {
-            return this.loadClass(name);
-        } finally {
-            synchronized (delegatedClassLoading) {
-                decr(delegatedClassLoading, name);
-            }
+            return super.findClass(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private boolean hasLocalClass(String name) {
+        return (classSource != null && classSource.find(name) != null)
+                || (librarySource != null && librarySource.find(name) != null)
+                || findResource(classFileName(name)) != null;
+    }
+
+    @Override
+    public URL findResource(String name) {
+        // answer misses from the index, without searching the jar files
+        URL url = entryIndex != null && !entryIndex.mightContain(name) ? null : super.findResource(name);
+
+        if (url != null) return url;
+
+        for (ClassSource source : new ClassSource[] { classSource, librarySource }) {
+            if (source == null) continue;
+
+            List<URL> sourceResources = source.findResources(name);
+            if (!sourceResources.isEmpty()) return sourceResources.get(0);
+        }
+
+        return null;
+    }
+
+    /**
+     * Start recording the names of the classes this loader defines from its own classpath.
+     */
+    public void startRecording() {
+        recordedClasses = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Stop recording defined classes.
+     *
+     * @return The names of the classes defined since {@link #startRecording()}, in definition order.
+     */
+    public List<String> stopRecording() {
+        var recorded = recordedClasses;
+        recordedClasses = null;
+
+        return recorded != null ? List.copyOf(recorded) : List.of();
+    }
+
+    /**
+     * Load a class on behalf of another class loader, without asking the other class loaders.
+     *
+     * @param name The binary name of the class.
+     * @param requester The class loader that requested the class, after its own lookup failed.
+     * @return The class, or null if this loader cannot provide it.
+     */
+    @Nullable
+    Class<?> tryLoadClassDelegated(String name, @Nullable ClassLoader requester) {
+        Class<?> res = findLoadedClass(name);
+
+        if (res != null) {
+            var profile = this.profile;
+            if (profile != null) profile.recordServed();
+
+            return res;
         }
+
+        // the requester already consulted the shared parent; if the class file is not in our classpath, it is a miss
+        if (requester != null && requester.getParent() == getParent() && !hasLocalClass(name)) {
+            return null;
+        }
+
+        try {
+            res = loadClassDelegated(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        var profile = this.profile;
+        if (profile != null) profile.recordServed();
+
+        return res;
     }
 
-    private static void incr(Map<String, Integer> map, String name) {
-        var count = map.get(name);
-        if (count == null) count = 0;
+    Class<?> loadClassDelegated(String name) throws ClassNotFoundException {
+        delegatedClassLoading.enter(name);
 
-        map.put(name, ++count);
+        try {
+            return this.loadClass(name);
+        } finally {
+            delegatedClassLoading.exit(name);
+        }
     }
 
-    private static void decr(Map<String, Integer> map, String name) {
-        var count = map.get(name);
-        if (count == null) return;
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            try {
+                if (classSource != null) {
+                    classSource.close();
+                }
+            } finally {
+                if (librarySource != null) {
+                    librarySource.close();
+                }
+            }
+        }
+    }
 
-        if (--count <= 0) map.remove(name);
-        else map.put(name, count);
+    private static String classFileName(String className) {
+        return className.replace('.', '/').concat(".class");
     }
 
     @Override
     public Enumeration<URL> findResources(String name) throws IOException {
-        Enumeration<URL> ownResources = super.findResources(name);
+        final var profile = this.profile;
+        if (profile == null) return findResourcesInternal(name);
 
-        synchronized (delegatedResourceLoading) {
-            // prevent infinite delegation
-            if (delegatedResourceLoading.containsKey(name)) {
-                return ownResources;
-            }
+        final long start = profile.start();
+        final Enumeration<URL> resources;
+
+        try {
+            resources = findResourcesInternal(name);
+        } finally {
+            profile.recordResources(start);
         }
 
-        @SuppressWarnings("unchecked")
-        Enumeration<URL>[] tmp = (Enumeration<URL>[]) new Enumeration<?>[2];
+        // the enumeration is lazy, so that most of the lookup only happens while iterating it
+        return start == ClassLoadingProfiler.NOT_SAMPLED ? resources : profile.timeResources(resources);
+    }
+
+    private Enumeration<URL> findResourcesInternal(String name) throws IOException {
+        final Enumeration<URL> urlResources = entryIndex != null && !entryIndex.mightContain(name)
+                ? Collections.emptyEnumeration()
+                : super.findResources(name);
+
+        final List<URL> sourceResources = new ArrayList<>();
 
-        tmp[0] = ownResources;
-        tmp[1] = resourceResolver.resolveResources(name, this);
+        // the libraries of the plugin come after the resources of the plugin jar itself
+        if (classSource != null) sourceResources.addAll(classSource.findResources(name));
+        if (librarySource != null) sourceResources.addAll(librarySource.findResources(name));
 
-        return new CompoundEnumeration<>(tmp);
+        final Enumeration<URL> ownResources = sourceResources.isEmpty() ? urlResources
+                : CompoundEnumeration.lazy(List.<Supplier<Enumeration<URL>>>of(
+                        () -> urlResources,
+                        () -> Collections.enumeration(sourceResources)
+                ).iterator());
+
+        // prevent infinite delegation
+        if (delegatedResourceLoading.isActive(name)) {
+            return ownResources;
+        }
+
+        // other class loaders are only asked, once the own resources are exhausted
+        return CompoundEnumeration.lazy(List.<Supplier<Enumeration<URL>>>of(
+                () -> ownResources,
+                () -> resourceResolver.resolveResources(name, this)
+        ).iterator());
     }
 
     Enumeration<URL> getResourcesDelegated(String name) throws IOException {
-        synchronized (delegatedResourceLoading) {
-            incr(delegatedResourceLoading, name);
-        }
+        delegatedResourceLoading.enter(name);
 
         try {
             return this.getResources(name);
         } finally {
-            synchronized (delegatedResourceLoading) {
-                decr(delegatedResourceLoading, name);
-            }
+            delegatedResourceLoading.exit(name);
         }
     }
 }
@@ -2,10 +2,13 @@ package work.lclpnet.plugin.load;
 
 import work.lclpnet.plugin.Plugin;
 import work.lclpnet.plugin.manifest.PluginManifest;
+import work.lclpnet.plugin.util.ClassPathHash;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 public class UrlLoadablePlugin implements LoadablePlugin {
 
@@ -13,6 +16,12 @@ public class UrlLoadablePlugin implements LoadablePlugin {
     private final URL[] urls;
     private final Object source;
     private final ClassLoaderContainer classLoaderContainer;
+    @Nullable
+    private ClassListCache classListCache = null;
+    @Nullable
+    private ClassSourceFactory classSourceFactory = null;
+    @Nullable
+    private DelegationPolicy delegationPolicy = null;
 
     public UrlLoadablePlugin(PluginManifest manifest, URL url, Object source, ClassLoaderContainer classLoaderContainer) {
         this(manifest, new URL[] { url }, source, classLoaderContainer);
@@ -35,15 +44,64 @@ public class UrlLoadablePlugin implements LoadablePlugin {
         return source;
     }
 
+    /**
+     * Set a class list cache, which is used to preload or record the classes of the plugin when it is loaded.
+     * @param classListCache The class list cache, or null to disable.
+     */
+    public void setClassListCache(@Nullable ClassListCache classListCache) {
+        this.classListCache = classListCache;
+    }
+
+    /**
+     * Set a class source factory, which creates an additional class source for the plugin when it is loaded.
+     * @param classSourceFactory The class source factory, or null to only load classes from the urls.
+     */
+    public void setClassSourceFactory(@Nullable ClassSourceFactory classSourceFactory) {
+        this.classSourceFactory = classSourceFactory;
+    }
+
+    /**
+     * Set the delegation policy of the plugin class loader.
+     * @param delegationPolicy The delegation policy, or null to use the delegation rules of the plugin manifest.
+     */
+    public void setDelegationPolicy(@Nullable DelegationPolicy delegationPolicy) {
+        this.delegationPolicy = delegationPolicy;
+    }
+
     @Override
     public LoadedPlugin load() throws PluginLoadException {
         Plugin plugin;
 
-        var classLoader = new PluginClassLoader(urls, getClass().getClassLoader(), manifest, classLoaderContainer, classLoaderContainer);
+        var policy = delegationPolicy != null ? delegationPolicy : DelegationPolicy.of(manifest.delegation());
+
+        // the classpath is hashed at most once, even if both the class source and the class list cache need it
+        var hash = ClassPathHash.of(urls);
+        var classSource = createClassSource(hash);
+        ClassSource librarySource;
+
+        try {
+            librarySource = openLibraries();
+        } catch (PluginLoadException e) {
+            closeQuietly(classSource);
+            throw e;
+        }
+
+        var classLoader = new PluginClassLoader(urls, getClass().getClassLoader(), manifest, classLoaderContainer,
+                classLoaderContainer, classSource, librarySource, policy);
+
+        final CompletableFuture<Void> preload = classListCache != null
+                ? classListCache.prepare(classLoader, hash)
+                : null;
 
         try {
             plugin = classLoader.loadPlugin();
         } catch (ReflectiveOperationException e) {
+            if (preload != null) {
+                // do not define classes in the class loader after it was closed
+                preload.cancel(false);
+                classListCache.discard(classLoader);
+            }
+
             try {
                 classLoader.close();
             } catch (IOException ignored) {}
@@ -53,4 +111,34 @@ public class UrlLoadablePlugin implements LoadablePlugin {
 
         return new JarLoadedPlugin(plugin, source, manifest, classLoader, classLoaderContainer);
     }
+
+    @Nullable
+    private ClassSource createClassSource(ClassPathHash hash) {
+        if (classSourceFactory == null) return null;
+
+        try {
+            return classSourceFactory.create(manifest, urls, hash).orElse(null);
+        } catch (IOException e) {
+            throw new PluginLoadException("Failed to create the class source of plugin '%s'".formatted(manifest.id()), e);
+        }
+    }
+
+    @Nullable
+    private ClassSource openLibraries() {
+        if (manifest.libraries().isEmpty()) return null;
+
+        try {
+            return NestedJarClassSource.open(urls, manifest.libraries());
+        } catch (IOException e) {
+            throw new PluginLoadException("Failed to open the libraries of plugin '%s'".formatted(manifest.id()), e);
+        }
+    }
+
+    private static void closeQuietly(@Nullable ClassSource source) {
+        if (source == null) return;
+
+        try {
+            source.close();
+        } catch (IOException ignored) {}
+    }
 }
@@ -1,8 +1,14 @@
 package work.lclpnet.plugin.manifest;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
-public record BasePluginManifest(String version, String id, String entryPoint,
-                                 Set<String> dependsOn) implements PluginManifest {
+public record BasePluginManifest(String version, String id, String entryPoint, Set<String> dependsOn,
+                                 Set<String> preload, List<String> libraries,
+                                 DelegationRules delegation) implements PluginManifest {
 
+    public BasePluginManifest(String version, String id, String entryPoint, Set<String> dependsOn) {
+        this(version, id, entryPoint, dependsOn, Collections.emptySet(), Collections.emptyList(), DelegationRules.NONE);
+    }
 }
@@ -0,0 +1,19 @@
+package work.lclpnet.plugin.manifest;
+
+import java.util.Set;
+
+/**
+ * Class delegation rules declared by a plugin. Each entry is a package name, which includes its subpackages.
+ *
+ * @param parentOnly    Packages that are only loaded from the parent class loader, e.g. the host api.
+ * @param childFirst    Packages that are loaded from the plugin itself, before asking the parent class loader.
+ * @param neverDelegate Packages that are never resolved from other plugins.
+ */
+public record DelegationRules(Set<String> parentOnly, Set<String> childFirst, Set<String> neverDelegate) {
+
+    public static final DelegationRules NONE = new DelegationRules(Set.of(), Set.of(), Set.of());
+
+    public boolean isEmpty() {
+        return parentOnly.isEmpty() && childFirst.isEmpty() && neverDelegate.isEmpty();
+    }
+}
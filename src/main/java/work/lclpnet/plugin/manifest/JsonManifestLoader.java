@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -55,7 +56,35 @@ public class JsonManifestLoader implements PluginManifestLoader {
                 .map(x -> (String) x)
                 .collect(Collectors.toUnmodifiableSet()) : Collections.<String>emptySet();
 
-        return new BasePluginManifest(version, id, entry, dependsOn);
+        final var preload = stringSet(obj, "preload");
+
+        optional(obj, "libraries", array(STRING));
+        final var libraries = obj.has("libraries") ? stream(obj.getJSONArray("libraries"))
+                .map(x -> (String) x)
+                .toList() : Collections.<String>emptyList();
+
+        optional(obj, "delegation", x -> x instanceof JSONObject);
+        final var delegation = obj.has("delegation")
+                ? loadDelegation(obj.getJSONObject("delegation"))
+                : DelegationRules.NONE;
+
+        return new BasePluginManifest(version, id, entry, dependsOn, preload, libraries, delegation);
+    }
+
+    protected DelegationRules loadDelegation(JSONObject obj) {
+        return new DelegationRules(
+                stringSet(obj, "parentOnly"),
+                stringSet(obj, "childFirst"),
+                stringSet(obj, "neverDelegate")
+        );
+    }
+
+    protected static Set<String> stringSet(JSONObject obj, String key) throws ManifestLoadException {
+        optional(obj, key, array(STRING));
+
+        return obj.has(key) ? stream(obj.getJSONArray(key))
+                .map(x -> (String) x)
+                .collect(Collectors.toUnmodifiableSet()) : Collections.emptySet();
     }
 
     protected static void require(JSONObject obj, String key, Predicate<Object> predicate) throws ManifestLoadException {
@@ -1,5 +1,7 @@
 package work.lclpnet.plugin.manifest;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 public interface PluginManifest {
@@ -11,4 +13,33 @@ public interface PluginManifest {
     String entryPoint();
 
     Set<String> dependsOn();
+
+    /**
+     * Get the classes that should be preloaded in the background, after the plugin was loaded.
+     * Each entry is either a binary class name, a package followed by ".*" for all classes of that package,
+     * or "*" for all classes of the plugin.
+     *
+     * @return The preload entries. Empty, if the plugin does not opt in to preloading.
+     */
+    default Set<String> preload() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Get the jar files nested in the plugin jar, which are loaded together with the plugin.
+     * The nested jars are read in memory; they do not have to be extracted.
+     *
+     * @return The entry names of the nested jars, e.g. "META-INF/libs/library.jar", in classpath order.
+     */
+    default List<String> libraries() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the class delegation rules of the plugin.
+     * @return The delegation rules, {@link DelegationRules#NONE} by default.
+     */
+    default DelegationRules delegation() {
+        return DelegationRules.NONE;
+    }
 }
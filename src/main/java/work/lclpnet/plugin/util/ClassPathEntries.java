@@ -0,0 +1,151 @@
+package work.lclpnet.plugin.util;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Utility to list the entries of a classpath, consisting of jar files.
+ */
+public class ClassPathEntries {
+
+    private ClassPathEntries() {}
+
+    /**
+     * List the names of all file entries on the given classpath.
+     * Entry names use '/' as separator, like in a jar file.
+     * Jars listed in the "Class-Path" manifest attribute of a jar are included, like a {@link java.net.URLClassLoader}
+     * includes them.
+     *
+     * @param urls The classpath urls.
+     * @return The entry names, or an empty optional if one of the urls cannot be listed, e.g. for non-file urls.
+     * Directories are not listed either, as their contents can change while the classpath is in use.
+     * @throws IOException If a jar file could not be read.
+     */
+    public static Optional<Set<String>> list(URL[] urls) throws IOException {
+        final Set<String> entries = new HashSet<>();
+        final Deque<URL> queue = new ArrayDeque<>(Arrays.asList(urls));
+        final Set<String> visited = new HashSet<>();
+
+        while (!queue.isEmpty()) {
+            URL url = queue.poll();
+
+            if (!visited.add(url.toExternalForm())) continue;
+
+            if (!"file".equals(url.getProtocol())) return Optional.empty();
+
+            Path path;
+            try {
+                path = Path.of(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return Optional.empty();
+            }
+
+            if (Files.isDirectory(path)) {
+                return Optional.empty();
+            } else if (Files.isRegularFile(path)) {
+                queue.addAll(listJar(path, url, entries));
+            }
+            // missing files are skipped, like the url class loader does
+        }
+
+        return Optional.of(entries);
+    }
+
+    /**
+     * Get the package names of all classes among the given entries.
+     *
+     * @param entries Entry names, as returned by {@link #list(URL[])}.
+     * @return The binary package names, e.g. "work.lclpnet.plugin". Classes in the default package yield "".
+     */
+    public static Set<String> packageNames(Set<String> entries) {
+        final Set<String> packages = new HashSet<>();
+
+        for (String entry : entries) {
+            if (!entry.endsWith(".class") || entry.startsWith("META-INF/")) continue;
+
+            int lastSlash = entry.lastIndexOf('/');
+            packages.add(lastSlash == -1 ? "" : entry.substring(0, lastSlash).replace('/', '.'));
+        }
+
+        return packages;
+    }
+
+    /**
+     * Get the binary names of all classes among the given entries.
+     *
+     * @param entries Entry names, as returned by {@link #list(URL[])}.
+     * @return The binary class names, e.g. "work.lclpnet.plugin.Plugin". Module descriptors are excluded.
+     */
+    public static Set<String> classNames(Set<String> entries) {
+        final Set<String> classNames = new HashSet<>();
+
+        for (String entry : entries) {
+            if (!entry.endsWith(".class") || entry.startsWith("META-INF/") || entry.endsWith("module-info.class")) continue;
+
+            classNames.add(entry.substring(0, entry.length() - ".class".length()).replace('/', '.'));
+        }
+
+        return classNames;
+    }
+
+    /**
+     * Get the package name of a binary class name.
+     *
+     * @param className The binary class name, e.g. "work.lclpnet.plugin.Plugin".
+     * @return The package name, e.g. "work.lclpnet.plugin", or "" for the default package.
+     */
+    public static String packageOf(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot == -1 ? "" : className.substring(0, lastDot);
+    }
+
+    /**
+     * List the entries of a jar file.
+     * @return The urls of the jars declared in the "Class-Path" manifest attribute.
+     */
+    private static List<URL> listJar(Path path, URL url, Set<String> entries) throws IOException {
+        try (JarFile jar = new JarFile(path.toFile())) {
+            Enumeration<JarEntry> jarEntries = jar.entries();
+
+            while (jarEntries.hasMoreElements()) {
+                JarEntry entry = jarEntries.nextElement();
+
+                if (!entry.isDirectory()) {
+                    entries.add(entry.getName());
+                }
+            }
+
+            return manifestClassPath(jar.getManifest(), url);
+        }
+    }
+
+    private static List<URL> manifestClassPath(@Nullable Manifest manifest, URL base) {
+        if (manifest == null) return List.of();
+
+        String classPath = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        if (classPath == null || classPath.isBlank()) return List.of();
+
+        List<URL> urls = new ArrayList<>();
+
+        for (String entry : classPath.trim().split("\\s+")) {
+            try {
+                // relative to the declaring jar
+                urls.add(new URL(base, entry));
+            } catch (MalformedURLException ignored) {
+                // invalid entries are ignored by the url class loader as well
+            }
+        }
+
+        return urls;
+    }
+}
@@ -0,0 +1,122 @@
+package work.lclpnet.plugin.util;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Utility to compute a content hash of a classpath, consisting of jar files and directories.
+ * The hash changes whenever a file on the classpath changes.
+ * <p>
+ * Instances compute the hash of a classpath at most once, so that it can be shared by everything
+ * that is keyed on the classpath while a plugin is loaded.
+ * </p>
+ */
+public class ClassPathHash {
+
+    private final URL[] urls;
+    /* the computed hash, or null if it was not computed yet; guarded by this */
+    @Nullable
+    private Optional<String> sha256 = null;
+
+    private ClassPathHash(URL[] urls) {
+        this.urls = urls;
+    }
+
+    /**
+     * Create a lazily computed hash of a classpath.
+     *
+     * @param urls The classpath urls.
+     * @return The hash, which is computed when it is first requested.
+     */
+    public static ClassPathHash of(URL[] urls) {
+        return new ClassPathHash(urls.clone());
+    }
+
+    /**
+     * Get the SHA-256 hash of the contents of the classpath. It is only computed on the first call.
+     *
+     * @return The hex encoded hash, or an empty optional if one of the urls is not a local file.
+     * @throws IOException If a file could not be read.
+     * @see #sha256(URL[])
+     */
+    public synchronized Optional<String> get() throws IOException {
+        if (sha256 == null) {
+            sha256 = sha256(urls);
+        }
+
+        return sha256;
+    }
+
+    /**
+     * Compute the SHA-256 hash of the contents of the given classpath.
+     *
+     * @param urls The classpath urls.
+     * @return The hex encoded hash, or an empty optional if one of the urls is not a local file.
+     * @throws IOException If a file could not be read.
+     */
+    public static Optional<String> sha256(URL[] urls) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+
+        for (URL url : urls) {
+            if (!"file".equals(url.getProtocol())) return Optional.empty();
+
+            Path path;
+            try {
+                path = Path.of(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return Optional.empty();
+            }
+
+            if (Files.isDirectory(path)) {
+                updateDirectory(digest, path);
+            } else if (Files.isRegularFile(path)) {
+                updateFile(digest, path);
+            }
+        }
+
+        return Optional.of(HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static void updateDirectory(MessageDigest digest, Path directory) throws IOException {
+        final List<Path> files;
+
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        for (Path file : files) {
+            // include the relative path, so that renames change the hash
+            digest.update(directory.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            updateFile(digest, file);
+        }
+    }
+
+    private static void updateFile(MessageDigest digest, Path file) throws IOException {
+        byte[] buffer = new byte[8192];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+}
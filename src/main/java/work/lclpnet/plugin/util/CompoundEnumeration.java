@@ -1,7 +1,9 @@
 package work.lclpnet.plugin.util;
 
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 
 /**
  * Accessible version of <code>java.lang.CompoundEnumeration</code>.
@@ -16,6 +18,18 @@ public class CompoundEnumeration<E> implements Enumeration<E> {
         this.enums = enums;
     }
 
+    /**
+     * Create a compound enumeration that obtains each enumeration only after the previous one is exhausted.
+     * Callers that stop after the first element therefore only query the first non-empty source.
+     *
+     * @param sources Suppliers of the enumerations. A supplier may return null, which is treated as empty.
+     * @param <E> Enumeration type
+     * @return A lazy compound enumeration.
+     */
+    public static <E> Enumeration<E> lazy(Iterator<? extends Supplier<Enumeration<E>>> sources) {
+        return new Lazy<>(sources);
+    }
+
     private boolean next() {
         while (index < enums.length) {
             if (enums[index] != null && enums[index].hasMoreElements()) {
@@ -39,4 +53,34 @@ public class CompoundEnumeration<E> implements Enumeration<E> {
 
         return enums[index].nextElement();
     }
-}
\ No newline at end of file
+
+    private static class Lazy<E> implements Enumeration<E> {
+
+        private final Iterator<? extends Supplier<Enumeration<E>>> sources;
+        private Enumeration<E> current = null;
+
+        private Lazy(Iterator<? extends Supplier<Enumeration<E>>> sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            while (current == null || !current.hasMoreElements()) {
+                if (!sources.hasNext()) return false;
+
+                current = sources.next().get();
+            }
+
+            return true;
+        }
+
+        @Override
+        public E nextElement() {
+            if (!hasMoreElements()) {
+                throw new NoSuchElementException();
+            }
+
+            return current.nextElement();
+        }
+    }
+}
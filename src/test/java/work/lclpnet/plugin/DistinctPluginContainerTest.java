@@ -3,16 +3,19 @@ package work.lclpnet.plugin;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import work.lclpnet.plugin.load.LoadedPlugin;
-import work.lclpnet.plugin.load.PluginLoadException;
+import work.lclpnet.plugin.load.*;
 import work.lclpnet.plugin.manifest.BasePluginManifest;
+import work.lclpnet.plugin.manifest.PluginManifest;
 import work.lclpnet.plugin.mock.ExtendedDistinctPluginContainer;
 import work.lclpnet.plugin.mock.TestLoadablePlugin;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import work.lclpnet.plugin.mock.TestPlugin;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -285,4 +288,523 @@ class DistinctPluginContainerTest {
         assertThrowsExactly(PluginLoadException.class, () -> container.loadPlugin(pluginA),
                 "Plugin version does not respect semver");
     }
-}
\ No newline at end of file
+
+    @Test
+    void unloadPlugins_perBatch_collectedOnce() {
+        final var loadedIds = new ArrayList<String>();
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        container.setUnloadGcPolicy(UnloadGcPolicy.PER_BATCH);
+
+        var pluginA = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")).orElseThrow();
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA"));
+        var pluginC = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginC")).orElseThrow();
+
+        container.unloadPlugins(List.of(pluginA, pluginC));
+
+        assertTrue(container.getPlugins().isEmpty());
+
+        var gc = container.getLastUnloadGc().orElseThrow();
+        assertEquals(3, gc.unloaded());
+    }
+
+    @Test
+    void unloadPlugin_never_notCollected() {
+        final var container = new DistinctPluginContainer(LOGGER);
+
+        var pluginA = container.loadPlugin(new TestLoadablePlugin(new ArrayList<>(), "pluginA")).orElseThrow();
+        container.unloadPlugin(pluginA);
+
+        assertTrue(container.getLastUnloadGc().isEmpty());
+    }
+
+    @Test
+    void unloadGcPolicy_metaspaceThreshold_collectsAbove() {
+        var policy = UnloadGcPolicy.perBatchAboveMetaspace(1024);
+
+        assertTrue(policy.shouldCollect(2048));
+        assertFalse(policy.shouldCollect(512));
+        assertFalse(policy.shouldCollect(-1));
+    }
+
+    @Test
+    void getPlugins_afterUnload_snapshotUnchanged() {
+        final var container = new DistinctPluginContainer(LOGGER);
+        assertEquals(0, container.getVersion());
+
+        var pluginA = container.loadPlugin(new TestLoadablePlugin(new ArrayList<>(), "pluginA")).orElseThrow();
+        var snapshot = container.getPlugins();
+        assertEquals(1, container.getVersion());
+
+        container.unloadPlugin(pluginA);
+
+        assertEquals(Set.of(pluginA), snapshot);
+        assertTrue(container.getPlugins().isEmpty());
+        assertEquals(2, container.getVersion());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(pluginA));
+    }
+
+    @Test
+    void unloadPlugin_parallel_levelsUnloadedConcurrently() {
+        final var barrier = new CyclicBarrier(2);
+        final var unloadOrder = Collections.synchronizedList(new ArrayList<String>());
+
+        // pluginB and pluginC have to be unloading at the same time to pass the barrier
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean remove(Object id) {
+                if (id.equals("pluginB") || id.equals("pluginC")) {
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                        throw new IllegalStateException("Plugins were not unloaded concurrently", e);
+                    }
+                }
+
+                unloadOrder.add((String) id);
+
+                synchronized (this) {
+                    return super.remove(id);
+                }
+            }
+        };
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var executor = Executors.newFixedThreadPool(2);
+        container.setUnloadExecutor(executor);
+
+        var pluginA = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")).orElseThrow();
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginC", "pluginA"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginD", "pluginB"));
+
+        try {
+            container.unloadPlugin(pluginA);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertTrue(loadedIds.isEmpty());
+        assertEquals(4, unloadOrder.size());
+        assertEquals("pluginD", unloadOrder.get(0));
+        assertEquals(Set.of("pluginB", "pluginC"), Set.copyOf(unloadOrder.subList(1, 3)));
+        assertEquals("pluginA", unloadOrder.get(3));
+    }
+
+    @Test
+    void unloadPlugin_parallelUnloadQueriesContainer_noDeadlock() {
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var dependants = Collections.synchronizedMap(new HashMap<String, List<String>>());
+        final LoadedPlugin[] pluginA = new LoadedPlugin[1];
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean remove(Object id) {
+                if (id.equals("pluginB") || id.equals("pluginC")) {
+                    // runs on an executor thread, while the unloading thread waits for it
+                    dependants.put((String) id, container.getOrderedDependants(pluginA[0]).stream()
+                            .map(LoadedPlugin::getId)
+                            .toList());
+                }
+
+                synchronized (this) {
+                    return super.remove(id);
+                }
+            }
+        };
+
+        final var executor = Executors.newFixedThreadPool(2);
+        container.setUnloadExecutor(executor);
+
+        pluginA[0] = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")).orElseThrow();
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginC", "pluginA"));
+
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> container.unloadPlugin(pluginA[0]));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertEquals(Set.of("pluginB", "pluginC"), dependants.keySet());
+        assertEquals(Set.of("pluginB", "pluginC"), Set.copyOf(dependants.get("pluginB")));
+    }
+
+    @Test
+    void unloadAll_dependencies_reverseOrder() {
+        final var unloadOrder = new ArrayList<String>();
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean remove(Object id) {
+                unloadOrder.add((String) id);
+                return super.remove(id);
+            }
+        };
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginC", "pluginB"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginD"));
+
+        container.unloadAll(null);
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertTrue(loadedIds.isEmpty());
+        assertEquals(4, unloadOrder.size());
+        assertTrue(unloadOrder.indexOf("pluginC") < unloadOrder.indexOf("pluginB"));
+        assertTrue(unloadOrder.indexOf("pluginB") < unloadOrder.indexOf("pluginA"));
+    }
+
+    @Test
+    void unloadAll_classLoaderContainer_rebuiltOnce() throws IOException {
+        try (var classLoaderContainer = new DefaultClassLoaderContainer()) {
+            assertUnloadAllBatched(new DistinctPluginContainer(LOGGER, classLoaderContainer), classLoaderContainer);
+        }
+    }
+
+    @Test
+    void unloadAll_classLoaderContainerOfPlugins_rebuiltOnce() throws IOException {
+        try (var classLoaderContainer = new DefaultClassLoaderContainer()) {
+            assertUnloadAllBatched(new DistinctPluginContainer(LOGGER), classLoaderContainer);
+        }
+    }
+
+    private static void assertUnloadAllBatched(DistinctPluginContainer container,
+                                               DefaultClassLoaderContainer classLoaderContainer) throws IOException {
+        final var classLoaders = new ArrayList<ClosingClassLoader>();
+        final var closedOnUnload = new ArrayList<Boolean>();
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean remove(Object id) {
+                closedOnUnload.add(classLoaders.stream().anyMatch(loader -> loader.closed));
+                return super.remove(id);
+            }
+        };
+
+        for (String id : List.of("pluginA", "pluginB", "pluginC")) {
+            var dependencies = id.equals("pluginA") ? new String[0] : new String[] { "pluginA" };
+            var testLoadable = new TestLoadablePlugin(loadedIds, id, dependencies);
+            var classLoader = new ClosingClassLoader();
+            classLoaders.add(classLoader);
+
+            container.loadPlugin(new LoadablePlugin() {
+                @Override
+                public PluginManifest getManifest() {
+                    return testLoadable.getManifest();
+                }
+
+                @Override
+                public Object getSource() {
+                    return id;
+                }
+
+                @Override
+                public LoadedPlugin load() {
+                    return new JarLoadedPlugin(new TestPlugin(id, loadedIds), id, getManifest(), classLoader,
+                            classLoaderContainer);
+                }
+            });
+        }
+
+        long version = classLoaderContainer.getVersion();
+
+        container.unloadAll(null);
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertEquals(List.of(false, false, false), closedOnUnload);
+        assertEquals(version + 1, classLoaderContainer.getVersion());
+        assertTrue(classLoaders.stream().allMatch(loader -> loader.closed));
+    }
+
+    private static class ClosingClassLoader extends URLClassLoader {
+
+        private volatile boolean closed = false;
+
+        ClosingClassLoader() {
+            super(new URL[0], DistinctPluginContainerTest.class.getClassLoader());
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    void unloadAll_budgetExhausted_removedWithoutUnload() {
+        final var loadedIds = new ArrayList<String>();
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA"));
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA"));
+
+        container.unloadAll(Duration.ZERO);
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertEquals(Set.of("pluginA", "pluginB"), Set.copyOf(loadedIds));
+    }
+
+    @Test
+    void loadPlugin_loading_visible() {
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var visible = new ArrayList<Boolean>();
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean add(String id) {
+                visible.add(container.isPluginLoaded(id) && container.getPlugin(id).isPresent());
+                return super.add(id);
+            }
+        };
+
+        container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA"));
+
+        assertEquals(List.of(true), visible);
+        assertTrue(container.isPluginLoaded("pluginA"));
+    }
+
+    @Test
+    void loadPlugin_loadFails_rolledBack() {
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean add(String id) {
+                throw new IllegalStateException("Simulated load error");
+            }
+        };
+
+        final var container = new DistinctPluginContainer(LOGGER);
+
+        assertTrue(container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")).isEmpty());
+        assertFalse(container.isPluginLoaded("pluginA"));
+        assertTrue(container.getPlugins().isEmpty());
+
+        // the id is free again
+        assertTrue(container.loadPlugin(new TestLoadablePlugin(new ArrayList<>(), "pluginA")).isPresent());
+    }
+
+    @Test
+    void unloadPlugin_loading_waitsForLoad() throws Exception {
+        final var loadStarted = new CountDownLatch(1);
+        final var finishLoad = new CountDownLatch(1);
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public synchronized boolean add(String id) {
+                loadStarted.countDown();
+
+                try {
+                    assertTrue(finishLoad.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                return super.add(id);
+            }
+
+            @Override
+            public synchronized boolean remove(Object id) {
+                return super.remove(id);
+            }
+        };
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var load = executor.submit(() -> container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            var pluginA = container.getPlugin("pluginA").orElseThrow();
+            var unload = executor.submit(() -> container.unloadPlugin(pluginA));
+
+            // Plugin.unload() must not run before Plugin.load() has returned
+            assertThrows(TimeoutException.class, () -> unload.get(100, TimeUnit.MILLISECONDS));
+
+            finishLoad.countDown();
+
+            assertTrue(load.get(5, TimeUnit.SECONDS).isPresent());
+            unload.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertTrue(loadedIds.isEmpty());
+    }
+
+    @Test
+    void unloadPlugin_dependantLoading_waitsForLoad() throws Exception {
+        final var loadStarted = new CountDownLatch(1);
+        final var finishLoad = new CountDownLatch(1);
+        final var unloadOrder = Collections.synchronizedList(new ArrayList<String>());
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public synchronized boolean add(String id) {
+                if (id.equals("pluginB")) {
+                    loadStarted.countDown();
+
+                    try {
+                        assertTrue(finishLoad.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                return super.add(id);
+            }
+
+            @Override
+            public synchronized boolean remove(Object id) {
+                unloadOrder.add((String) id);
+                return super.remove(id);
+            }
+        };
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        var pluginA = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")).orElseThrow();
+
+        final var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var load = executor.submit(() -> container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA")));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            var unload = executor.submit(() -> container.unloadPlugin(pluginA));
+
+            // the dependency is not unloaded while its dependant is loading
+            assertThrows(TimeoutException.class, () -> unload.get(100, TimeUnit.MILLISECONDS));
+            assertTrue(container.isPluginLoaded("pluginA"));
+
+            finishLoad.countDown();
+
+            assertTrue(load.get(5, TimeUnit.SECONDS).isPresent());
+            unload.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertEquals(List.of("pluginB", "pluginA"), unloadOrder);
+    }
+
+    @Test
+    void unloadAll_unloadTimedOut_notReleased() throws InterruptedException {
+        final var finishUnload = new CountDownLatch(1);
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean remove(Object id) {
+                if (id.equals("pluginB")) {
+                    try {
+                        finishUnload.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                synchronized (this) {
+                    return super.remove(id);
+                }
+            }
+        };
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var executor = Executors.newFixedThreadPool(2);
+        container.setUnloadExecutor(executor);
+
+        var pluginA = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginA")).orElseThrow();
+        var pluginB = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginB", "pluginA")).orElseThrow();
+        var pluginC = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginC", "pluginA")).orElseThrow();
+        var pluginD = container.loadPlugin(new TestLoadablePlugin(loadedIds, "pluginD")).orElseThrow();
+
+        try {
+            container.unloadAll(Duration.ofMillis(100));
+        } finally {
+            finishUnload.countDown();
+            executor.shutdown();
+        }
+
+        assertTrue(container.getPlugins().isEmpty());
+
+        // pluginB is still unloading, so that neither it nor its dependency are released
+        assertNotNull(pluginB.getPlugin());
+        assertNotNull(pluginA.getPlugin());
+        assertNull(pluginC.getPlugin());
+        assertNull(pluginD.getPlugin());
+    }
+
+    @Test
+    void replacePlugins_newVersionFails_oldKept() {
+        final var failing = new boolean[] {false};
+
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean add(String id) {
+                if (failing[0]) throw new IllegalStateException("Simulated load error");
+                return super.add(id);
+            }
+        };
+
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var container = new DistinctPluginContainer(LOGGER);
+
+        var loaded = container.loadPlugin(pluginA).orElseThrow();
+        var before = loaded.getPlugin();
+        long version = container.getVersion();
+
+        failing[0] = true;
+
+        assertTrue(container.replacePlugins(List.of(pluginA)).isEmpty());
+        assertSame(loaded, container.getPlugin("pluginA").orElseThrow());
+        assertSame(before, loaded.getPlugin());
+        assertEquals(version, container.getVersion());
+    }
+
+    @Test
+    void replacePlugins_dependantNotReplaced_throws() {
+        final var loadedIds = new ArrayList<String>();
+
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var pluginB = new TestLoadablePlugin(loadedIds, "pluginB", "pluginA");
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        container.loadPlugin(pluginA);
+        container.loadPlugin(pluginB);
+
+        assertThrows(PluginLoadException.class, () -> container.replacePlugins(List.of(pluginA)));
+        assertThrows(PluginLoadException.class, () -> container.replacePlugins(List.of(pluginB, pluginA)));
+        assertEquals(List.of("pluginA", "pluginB"), loadedIds);
+    }
+
+    @Test
+    void replacePlugins_withDependant_swapped() {
+        final var loadedIds = new ArrayList<String>();
+
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var pluginB = new TestLoadablePlugin(loadedIds, "pluginB", "pluginA");
+
+        final var container = new DistinctPluginContainer(LOGGER);
+        var oldA = container.loadPlugin(pluginA).orElseThrow();
+        var oldB = container.loadPlugin(pluginB).orElseThrow();
+        long version = container.getVersion();
+
+        var replaced = container.replacePlugins(List.of(pluginA, pluginB)).orElseThrow();
+        var newA = replaced.get(0);
+        var newB = replaced.get(1);
+
+        assertSame(newA, container.getPlugin("pluginA").orElseThrow());
+        assertSame(newB, container.getPlugin("pluginB").orElseThrow());
+        assertNull(oldA.getPlugin());
+        assertNull(oldB.getPlugin());
+        assertEquals(version + 1, container.getVersion());
+        assertEquals(List.of(newB), container.getOrderedDependants(newA));
+        assertEquals(Set.of("pluginA", "pluginB"), Set.copyOf(loadedIds));
+    }
+}
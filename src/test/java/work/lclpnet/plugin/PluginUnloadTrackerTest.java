@@ -0,0 +1,70 @@
+package work.lclpnet.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginUnloadTrackerTest {
+
+    private static CompletableFuture<Void> trackNewLoader(PluginUnloadTracker tracker) {
+        // the class loader is only referenced in this frame
+        return tracker.track("plugin", new ClassLoader(null) {});
+    }
+
+    @Test
+    void track_unreachable_collected() throws Exception {
+        var collected = new CountDownLatch(1);
+        var tracker = new PluginUnloadTracker(Duration.ofMinutes(1), new PluginUnloadTracker.Listener() {
+            @Override
+            public void onCollected(String pluginId, Duration elapsed, boolean leaked) {
+                assertFalse(leaked);
+                collected.countDown();
+            }
+
+            @Override
+            public void onLeaked(String pluginId, Duration elapsed) {}
+        });
+
+        var future = trackNewLoader(tracker);
+
+        // the test requests collections itself; the tracker only waits for them
+        for (int i = 0; i < 50 && !future.isDone(); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertTrue(collected.await(5, TimeUnit.SECONDS));
+        assertTrue(tracker.getPending().isEmpty());
+    }
+
+    @Test
+    void track_reachable_reportedAsLeaked() throws Exception {
+        var leaked = new CountDownLatch(1);
+        var tracker = new PluginUnloadTracker(Duration.ZERO, new PluginUnloadTracker.Listener() {
+            @Override
+            public void onCollected(String pluginId, Duration elapsed, boolean leaked) {}
+
+            @Override
+            public void onLeaked(String pluginId, Duration elapsed) {
+                leaked.countDown();
+            }
+        });
+
+        var loader = new ClassLoader(null) {};
+        var future = tracker.track("plugin", loader);
+
+        assertTrue(leaked.await(5, TimeUnit.SECONDS));
+        assertEquals(Set.of("plugin"), tracker.getLeaked());
+        assertFalse(future.isDone());
+
+        // keep the loader reachable until here
+        Reference.reachabilityFence(loader);
+    }
+}
@@ -4,13 +4,15 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import work.lclpnet.plugin.load.LoadedPlugin;
+import work.lclpnet.plugin.load.PluginLoadException;
 import work.lclpnet.plugin.mock.TestLoadablePlugin;
 import work.lclpnet.plugin.mock.TestPluginDiscovery;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -213,4 +215,135 @@ class SimplePluginManagerTest {
         var plugin = pluginManager.getPlugin(instance);
         assertEquals(loaded, plugin.orElseThrow());
     }
-}
\ No newline at end of file
+
+    @Test
+    void loadPluginAsync_dependency_chained() {
+        final var loadedIds = Collections.synchronizedList(new ArrayList<String>());
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var pluginB = new TestLoadablePlugin(loadedIds, "pluginB", "pluginA");
+
+        var discovery = new TestPluginDiscovery(pluginA, pluginB);
+        var container = new DistinctPluginContainer(LOGGER);
+        var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var pluginManager = new SimplePluginManager(discovery, container, executor);
+            var loadA = pluginManager.loadPluginAsync("pluginA");
+            var loadB = pluginManager.loadPluginAsync("pluginB");
+
+            assertTrue(loadB.join().isPresent());
+            assertTrue(loadA.join().isPresent());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of("pluginA", "pluginB"), loadedIds);
+    }
+
+    @Test
+    void shutdown_pendingLoad_awaited() throws InterruptedException {
+        final var loadedIds = Collections.synchronizedList(new ArrayList<String>());
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+
+        var discovery = new TestPluginDiscovery(pluginA);
+        var container = new DistinctPluginContainer(LOGGER);
+        var executor = Executors.newSingleThreadExecutor();
+        var release = new CountDownLatch(1);
+
+        try {
+            var pluginManager = new SimplePluginManager(discovery, container, executor);
+
+            // keep the load queued behind another task
+            executor.execute(() -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            var load = pluginManager.loadPluginAsync("pluginA");
+
+            var releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {}
+
+                release.countDown();
+            });
+
+            releaser.start();
+            pluginManager.shutdown();
+            releaser.join();
+
+            assertTrue(load.isDone());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(container.getPlugins().isEmpty());
+        assertTrue(loadedIds.isEmpty());
+    }
+
+    @Test
+    void loadPluginAsync_unknown_completesExceptionally() {
+        var discovery = new TestPluginDiscovery();
+        var container = new DistinctPluginContainer(LOGGER);
+
+        var pluginManager = new SimplePluginManager(discovery, container);
+        var load = pluginManager.loadPluginAsync("pluginA");
+
+        var e = assertThrows(CompletionException.class, load::join);
+        assertInstanceOf(PluginLoadException.class, e.getCause());
+    }
+
+    @Test
+    void reloadPluginAsync_afterLoad_swapped() {
+        final var loadedIds = Collections.synchronizedList(new ArrayList<String>());
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+
+        var discovery = new TestPluginDiscovery(pluginA);
+        var container = new DistinctPluginContainer(LOGGER);
+
+        var pluginManager = new SimplePluginManager(discovery, container);
+        var loaded = pluginManager.loadPluginAsync("pluginA").join().orElseThrow();
+
+        // NOTE: don't actually keep a direct reference of the actual foreign plugin class in production
+        var before = loaded.getPlugin();
+
+        pluginManager.reloadPluginAsync(loaded).join();
+
+        assertNotEquals(before, pluginManager.getPlugin("pluginA").orElseThrow().getPlugin());
+        assertEquals(List.of("pluginA"), loadedIds);
+    }
+
+    @Test
+    void reloadPlugins_sideBySide_dependantsSwapped() {
+        final var loadedIds = new ArrayList<String>();
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var pluginB = new TestLoadablePlugin(loadedIds, "pluginB", "pluginA");
+        final var pluginC = new TestLoadablePlugin(loadedIds, "pluginC");
+
+        var discovery = new TestPluginDiscovery(pluginA, pluginB, pluginC);
+        var container = new DistinctPluginContainer(LOGGER);
+
+        var pluginManager = new SimplePluginManager(discovery, container);
+        pluginManager.setReloadMode(ReloadMode.SIDE_BY_SIDE);
+        pluginManager.loadPlugin("pluginA");
+        pluginManager.loadPlugin("pluginB");
+        pluginManager.loadPlugin("pluginC");
+
+        // NOTE: don't actually keep a direct reference of the actual foreign plugin class in production
+        var beforeA = pluginManager.getPlugin("pluginA").orElseThrow().getPlugin();
+        var beforeB = pluginManager.getPlugin("pluginB").orElseThrow().getPlugin();
+        var beforeC = pluginManager.getPlugin("pluginC").orElseThrow().getPlugin();
+
+        pluginManager.reloadPlugin(pluginManager.getPlugin("pluginA").orElseThrow());
+
+        assertNotEquals(beforeA, pluginManager.getPlugin("pluginA").orElseThrow().getPlugin());
+        assertNotEquals(beforeB, pluginManager.getPlugin("pluginB").orElseThrow().getPlugin());
+        assertEquals(beforeC, pluginManager.getPlugin("pluginC").orElseThrow().getPlugin());
+        assertEquals(Set.of("pluginA", "pluginB", "pluginC"), new HashSet<>(loadedIds));
+        assertEquals(3, loadedIds.size());
+    }
+}
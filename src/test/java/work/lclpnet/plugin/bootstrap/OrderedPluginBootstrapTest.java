@@ -10,9 +10,8 @@ import work.lclpnet.plugin.mock.TestLoadablePlugin;
 import work.lclpnet.plugin.mock.TestPluginDiscovery;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -132,4 +131,81 @@ class OrderedPluginBootstrapTest {
         var boostrap = new OrderedPluginBootstrap(discovery, container);
         assertThrows(PluginLoadException.class, boostrap::loadPlugins);
     }
-}
\ No newline at end of file
+
+    @Test
+    void loadPlugins_parallelOrderComplex_loaded() throws IOException {
+        final var loadedIds = Collections.synchronizedList(new ArrayList<String>());
+
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var pluginB = new TestLoadablePlugin(loadedIds, "pluginB");
+        final var pluginC = new TestLoadablePlugin(loadedIds, "pluginC", "pluginF", "pluginA");
+        final var pluginD = new TestLoadablePlugin(loadedIds, "pluginD", "pluginB");
+        final var pluginE = new TestLoadablePlugin(loadedIds, "pluginE", "pluginD");
+        final var pluginF = new TestLoadablePlugin(loadedIds, "pluginF", "pluginB");
+
+        final var discovery = new TestPluginDiscovery(pluginA, pluginB, pluginC, pluginD, pluginE, pluginF);
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var boostrap = new OrderedPluginBootstrap(discovery, container);
+            boostrap.setExecutor(executor);
+            boostrap.loadPlugins();
+        } finally {
+            executor.shutdown();
+        }
+
+        BiPredicate<TestLoadablePlugin, TestLoadablePlugin> before = (a, b) -> {
+            String idA = a.getId(), idB = b.getId();
+            return loadedIds.indexOf(idA) < loadedIds.indexOf(idB);
+        };
+
+        assertEquals(6, loadedIds.size());
+        assertEquals(6, container.getPlugins().size());
+        assertTrue(before.test(pluginA, pluginC));
+        assertTrue(before.test(pluginB, pluginD));
+        assertTrue(before.test(pluginB, pluginF));
+        assertTrue(before.test(pluginD, pluginE));
+        assertTrue(before.test(pluginF, pluginC));
+    }
+
+    @Test
+    void loadPlugins_parallelIndependent_loadedConcurrently() throws IOException {
+        final var barrier = new CyclicBarrier(2);
+
+        // both plugins have to be loading at the same time to pass the barrier
+        final var loadedIds = new ArrayList<String>() {
+            @Override
+            public boolean add(String id) {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    throw new IllegalStateException("Plugins were not loaded concurrently", e);
+                }
+
+                synchronized (this) {
+                    return super.add(id);
+                }
+            }
+        };
+
+        final var pluginA = new TestLoadablePlugin(loadedIds, "pluginA");
+        final var pluginB = new TestLoadablePlugin(loadedIds, "pluginB");
+
+        final var discovery = new TestPluginDiscovery(pluginA, pluginB);
+        final var container = new DistinctPluginContainer(LOGGER);
+        final var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var boostrap = new OrderedPluginBootstrap(discovery, container);
+            boostrap.setExecutor(executor);
+            boostrap.loadPlugins();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(Set.of("pluginA", "pluginB"), new HashSet<>(loadedIds));
+        assertTrue(container.isPluginLoaded("pluginA"));
+        assertTrue(container.isPluginLoaded("pluginB"));
+    }
+}
@@ -2,8 +2,10 @@ package work.lclpnet.plugin.graph;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.List;
-import java.util.Set;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -81,6 +83,95 @@ class DAGTest {
         assertTrue(before(order, "b", "d"));
     }
 
+    @Test
+    void getTopologicalOrder_reverseInsertion_reordered() {
+        var G = new TestGraph();
+        var d = G.getOrCreate("d");
+        var c = G.getOrCreate("c");
+        var b = G.getOrCreate("b");
+        var a = G.getOrCreate("a");
+
+        assertTrue(c.addChild(d));
+        assertTrue(b.addChild(c));
+        assertTrue(a.addChild(b));
+
+        assertEquals(List.of("a", "b", "c", "d"), G.topologicalOrder());
+        assertEquals(List.of("b", "c", "d"), G.topologicalOrder(Set.of(b)));
+    }
+
+    @Test
+    void getTopologicalOrder_randomEdgesAndRemovals_valid() {
+        var G = new TestGraph();
+        var random = new Random(42);
+        List<DAG.Node<String>> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            nodes.add(G.getOrCreate("n" + i));
+        }
+
+        for (int i = 0; i < 400; i++) {
+            var parent = nodes.get(random.nextInt(nodes.size()));
+            var child = nodes.get(random.nextInt(nodes.size()));
+            parent.addChild(child);  // edges that would form a cycle are rejected
+        }
+
+        // enough removals to compact the maintained order
+        for (int i = 0; i < 60; i++) {
+            G.removeNode("n" + i);
+        }
+
+        var order = G.topologicalOrder();
+        assertEquals(40, order.size());
+
+        for (var parent : nodes) {
+            if (!order.contains(parent.getObj())) continue;
+
+            for (var child : parent.getChildren()) {
+                assertTrue(before(order, parent.getObj(), child.getObj()));
+            }
+        }
+
+        var root = G.getNode("n99").orElseThrow();
+        var partial = G.topologicalOrder(Set.of(root));
+        assertEquals("n99", partial.get(0));
+
+        for (var node : partial) {
+            for (var child : G.getNode(node).orElseThrow().getChildren()) {
+                assertTrue(before(partial, node, child.getObj()));
+            }
+        }
+    }
+
+    @Test
+    void Node$addChild_self_false() {
+        var G = new TestGraph();
+        var a = G.getOrCreate("a");
+
+        assertFalse(a.addChild(a));
+    }
+
+    @Test
+    void getLevels_complexPartial_valid() {
+        var G = new TestGraph();
+        var a = G.getOrCreate("a");
+        var b = G.getOrCreate("b");
+        var c = G.getOrCreate("c");
+        var d = G.getOrCreate("d");
+        var e = G.getOrCreate("e");
+
+        assertTrue(a.addChild(b));
+        assertTrue(a.addChild(c));
+        assertTrue(b.addChild(d));
+        assertTrue(a.addChild(d));
+        assertTrue(e.addChild(d));
+
+        var levels = G.levels(Set.of(a));
+        assertEquals(List.of(Set.of("a"), Set.of("b", "c"), Set.of("d")), levels);
+
+        levels = G.levels(null);
+        assertEquals(List.of(Set.of("a", "e"), Set.of("b", "c"), Set.of("d")), levels);
+    }
+
     @Test
     void Node$addChild_cycle_false() {
         var a = new TestNode("a");
@@ -101,6 +192,125 @@ class DAGTest {
         assertFalse(c.addChild(a));
     }
 
+    @Test
+    void Node$addChild_diamondChain_fast() {
+        // a chain of diamonds has exponentially many paths, which must not be explored one by one
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            var G = new DAG<Integer>();
+            var top = G.getOrCreateNode(0, 0);
+
+            for (int i = 1; i < 120; i += 3) {
+                var left = new DAG.Node<>(i, i);
+                var right = new DAG.Node<>(i + 1, i + 1);
+                var bottom = new DAG.Node<>(i + 2, i + 2);
+
+                assertTrue(top.addChild(left));
+                assertTrue(top.addChild(right));
+                assertTrue(left.addChild(bottom));
+                assertTrue(right.addChild(bottom));
+
+                top = bottom;
+            }
+
+            var first = G.getNode(0).orElseThrow();
+            assertFalse(top.addChild(first));
+            assertFalse(top.hasChildDeep(first));
+        });
+    }
+
+    @Test
+    void Node$hasChildDeep_largeDiamondGraph_fast() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            var G = new DAG<Integer>();
+            var top = G.getOrCreateNode(0, 0);
+            var first = top;
+            List<DAG.Node<Integer>> bottoms = new ArrayList<>();
+
+            // about 10k nodes; the edges are added bottom-up, so that the maintained order has to be repaired
+            for (int i = 9999; i > 0; i -= 3) {
+                var left = G.getOrCreateNode(i - 1, i - 1);
+                var right = G.getOrCreateNode(i - 2, i - 2);
+                var bottom = G.getOrCreateNode(i, i);
+
+                assertTrue(left.addChild(bottom));
+                assertTrue(right.addChild(bottom));
+                assertTrue(top.addChild(left));
+                assertTrue(top.addChild(right));
+
+                bottoms.add(bottom);
+                top = bottom;
+            }
+
+            assertEquals(10000, G.getTopologicalOrder().size());
+
+            // every node queries its reachability, which must be answered from the cache
+            for (var bottom : bottoms) {
+                assertTrue(first.hasChildDeep(bottom));
+                assertFalse(bottom.addChild(first));
+            }
+
+            // the middle node and the 1666 diamonds below it
+            var middle = bottoms.get(bottoms.size() / 2);
+            assertEquals(4999, G.getTopologicalOrder(Set.of(middle)).size());
+
+            // removing a node cuts the chain; only the ancestors of the removed node are affected
+            G.removeNode(middle.getKey());
+
+            assertFalse(first.hasChildDeep(top));
+            assertTrue(first.hasChildDeep(bottoms.get(bottoms.size() / 2 - 1)));
+            assertTrue(bottoms.get(bottoms.size() / 2 + 1).hasChildDeep(top));
+            assertEquals(10000 - 4999, G.getTopologicalOrder(Set.of(first)).size());
+        });
+    }
+
+    @Test
+    void Node$hasChildDeep_randomEdgesAndRemovals_matchesSearch() {
+        var G = new TestGraph();
+        var random = new Random(7);
+        List<DAG.Node<String>> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            nodes.add(G.getOrCreate("n" + i));
+        }
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                var parent = nodes.get(random.nextInt(nodes.size()));
+                var child = nodes.get(random.nextInt(nodes.size()));
+                parent.addChild(child);
+            }
+
+            // removed nodes are replaced, so that their ids are reused
+            for (int i = 0; i < 5; i++) {
+                int index = random.nextInt(nodes.size());
+                G.removeNode(nodes.get(index).getKey());
+                nodes.set(index, G.getOrCreate("r" + round + "_" + i));
+            }
+
+            for (var node : nodes) {
+                Set<DAG.Node<String>> reachable = search(node);
+
+                for (var other : nodes) {
+                    assertEquals(reachable.contains(other), node.hasChildDeep(other));
+                }
+
+                assertEquals(reachable.size() + 1, G.getTopologicalOrder(Set.of(node)).size());
+            }
+        }
+    }
+
+    private static <T> Set<DAG.Node<T>> search(DAG.Node<T> start) {
+        Set<DAG.Node<T>> visited = new HashSet<>();
+        Deque<DAG.Node<T>> stack = new ArrayDeque<>(start.getChildren());
+
+        while (!stack.isEmpty()) {
+            var node = stack.pop();
+            if (visited.add(node)) stack.addAll(node.getChildren());
+        }
+
+        return visited;
+    }
+
     private static class TestGraph extends DAG<String> {
         public Node<String> getOrCreate(String s) {
             return getOrCreateNode(s, s);
@@ -112,6 +322,12 @@ class DAGTest {
                     .toList();
         }
 
+        private List<Set<String>> levels(@Nullable Set<Node<String>> rootNodes) {
+            return getLevels(rootNodes).stream()
+                    .map(level -> level.stream().map(DAG.Node::getObj).collect(Collectors.toSet()))
+                    .toList();
+        }
+
         private List<String> topologicalOrder(Set<Node<String>> rootNodes) {
             return getTopologicalOrder(rootNodes).stream()
                     .map(DAG.Node::getObj)
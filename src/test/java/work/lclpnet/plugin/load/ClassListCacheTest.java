@@ -0,0 +1,97 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import work.lclpnet.plugin.util.ClassPathHash;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassListCacheTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassListCacheTest.class);
+
+    @Test
+    void prepare_trainingRun_recordsClasses() throws IOException, ClassNotFoundException {
+        var directory = Files.createTempDirectory("classlist");
+        var cache = new ClassListCache(directory, Runnable::run, logger);
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            container.add(provider);
+
+            assertTrue(cache.prepare(provider).isDone());
+
+            provider.loadClass("work.lclpnet.provider.ProviderPlugin");
+            cache.save();
+        }
+
+        try (var files = Files.list(directory)) {
+            var lists = files.toList();
+            assertEquals(1, lists.size());
+            assertTrue(Files.readAllLines(lists.get(0)).contains("work.lclpnet.provider.ProviderPlugin"));
+        }
+    }
+
+    @Test
+    void prepare_recordedClasses_preloaded() throws IOException {
+        var directory = Files.createTempDirectory("classlist");
+        var cache = new ClassListCache(directory, Runnable::run, logger);
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            container.add(provider);
+
+            var hash = ClassPathHash.sha256(provider.getURLs()).orElseThrow();
+            cache.write("provider", hash, List.of("work.lclpnet.provider.Instance"));
+
+            // observe the classes defined by the preload
+            provider.startRecording();
+            cache.prepare(provider).join();
+
+            // the class was loaded, although the plugin did not request it yet
+            assertEquals(List.of("work.lclpnet.provider.Instance"), provider.stopRecording());
+        }
+    }
+
+    @Test
+    void discard_recording_nothingSaved() throws IOException, ClassNotFoundException {
+        var directory = Files.createTempDirectory("classlist");
+        var cache = new ClassListCache(directory, Runnable::run, logger);
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            container.add(provider);
+
+            cache.prepare(provider);
+            provider.loadClass("work.lclpnet.provider.ProviderPlugin");
+
+            cache.discard(provider);
+            cache.save();
+
+            assertEquals(List.of(), provider.stopRecording());
+        }
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void read_otherHash_empty() throws IOException {
+        var directory = Files.createTempDirectory("classlist");
+        var cache = new ClassListCache(directory, Runnable::run, logger);
+
+        cache.write("provider", "abc", List.of("work.lclpnet.provider.Instance"));
+        assertTrue(cache.read("provider", "abc").isPresent());
+        assertTrue(cache.read("provider", "def").isEmpty());
+
+        // writing a new version replaces the old list
+        cache.write("provider", "def", List.of("work.lclpnet.provider.Instance"));
+        assertTrue(cache.read("provider", "abc").isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassLoadingProfilerTest {
+
+    @Test
+    void loadClass_crossPlugin_recorded() throws IOException, ClassNotFoundException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var profiler = new ClassLoadingProfiler();
+            container.setProfiler(profiler);
+
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            var test = DefaultClassLoaderContainerTest.createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            test.loadClass("work.lclpnet.provider.spi.TestService");
+            assertThrows(ClassNotFoundException.class, () -> test.loadClass("work.lclpnet.provider.spi.Unknown"));
+            provider.loadClass("work.lclpnet.provider.Instance");
+
+            var testStats = profiler.getStats("test").orElseThrow();
+            assertEquals(1, testStats.delegatedHits());
+            assertEquals(1, testStats.misses());
+            assertEquals(Map.of("work.lclpnet.provider.spi.TestService", "provider"), testStats.delegatedOrigins());
+            assertTrue(testStats.findNanos() > 0);
+
+            var providerStats = profiler.getStats("provider").orElseThrow();
+            assertEquals(1, providerStats.servedToOthers());
+            assertEquals(2, providerStats.localHits());
+        }
+    }
+
+    @Test
+    void findResources_iterated_timeRecorded() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var profiler = new ClassLoadingProfiler();
+            container.setProfiler(profiler);
+
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            var test = DefaultClassLoaderContainerTest.createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            var resources = test.findResources("plugin.json");
+            long beforeIteration = profiler.getStats("test").orElseThrow().resourceNanos();
+
+            int count = 0;
+
+            while (resources.hasMoreElements()) {
+                resources.nextElement();
+                count++;
+            }
+
+            assertEquals(2, count);
+
+            var stats = profiler.getStats("test").orElseThrow();
+            assertEquals(1, stats.resourceLookups());
+            assertTrue(stats.resourceNanos() > beforeIteration);
+        }
+    }
+
+    @Test
+    void setProfiler_null_stopsRecording() throws IOException, ClassNotFoundException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var profiler = new ClassLoadingProfiler(100);
+            container.setProfiler(profiler);
+
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            container.add(provider);
+
+            provider.loadClass("work.lclpnet.provider.Instance");
+            container.setProfiler(null);
+            provider.loadClass("work.lclpnet.provider.ProviderPlugin");
+
+            // counts are exact, even when sampling
+            assertEquals(1, profiler.getStats("provider").orElseThrow().localHits());
+            assertTrue(container.getProfiler().isEmpty());
+        }
+    }
+}
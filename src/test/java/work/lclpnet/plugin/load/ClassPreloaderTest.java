@@ -0,0 +1,97 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import work.lclpnet.plugin.manifest.BasePluginManifest;
+import work.lclpnet.plugin.manifest.DelegationRules;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassPreloaderTest {
+
+    private static final Path PROVIDER_PLUGIN = Path.of("src/test/resources/plugins/providerPlugin.jar");
+
+    private static PluginClassLoader createLoader(DefaultClassLoaderContainer container, Set<String> preload) throws IOException {
+        URL url = PROVIDER_PLUGIN.toUri().toURL();
+        var manifest = new BasePluginManifest("0.1.0-SNAPSHOT", "provider", null, Set.of(), preload, List.of(), DelegationRules.NONE);
+
+        var loader = new PluginClassLoader(url, ClassPreloaderTest.class.getClassLoader(), manifest, container, container);
+        container.add(loader);
+
+        return loader;
+    }
+
+    @Test
+    void selectClasses_all_everyClass() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loader = createLoader(container, Set.of(ClassPreloader.ALL_CLASSES));
+
+            assertEquals(List.of(
+                    "work.lclpnet.provider.Instance",
+                    "work.lclpnet.provider.ProviderPlugin",
+                    "work.lclpnet.provider.spi.TestService",
+                    "work.lclpnet.provider.spi.TestServiceManager",
+                    "work.lclpnet.provider.spi.TestServiceProvider"
+            ), ClassPreloader.selectClasses(loader));
+        }
+    }
+
+    @Test
+    void selectClasses_package_onlyPackageClasses() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loader = createLoader(container, Set.of("work.lclpnet.provider.*", "work.lclpnet.provider.spi.TestService"));
+
+            assertEquals(List.of(
+                    "work.lclpnet.provider.Instance",
+                    "work.lclpnet.provider.ProviderPlugin",
+                    "work.lclpnet.provider.spi.TestService"
+            ), ClassPreloader.selectClasses(loader));
+        }
+    }
+
+    @Test
+    void preload_declaredClasses_loadedWithProgress() throws IOException {
+        final List<Integer> progress = new ArrayList<>();
+        final var preloader = new ClassPreloader(Runnable::run, (manifest, processed, total) -> {
+            assertEquals("provider", manifest.id());
+            assertEquals(2, total);
+            progress.add(processed);
+        });
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loader = createLoader(container, Set.of("work.lclpnet.provider.spi.TestService", "work.lclpnet.provider.Unknown"));
+
+            loader.startRecording();
+            assertTrue(preloader.preload(loader).isDone());
+
+            assertEquals(List.of("work.lclpnet.provider.spi.TestService"), loader.stopRecording());
+            assertEquals(List.of(2), progress);
+        }
+    }
+
+    @Test
+    void preload_cancelled_stops() throws IOException {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final Executor executor = tasks::add;
+        final var preloader = new ClassPreloader(executor, ClassPreloader.Listener.NONE);
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loader = createLoader(container, Set.of(ClassPreloader.ALL_CLASSES));
+
+            loader.startRecording();
+            CompletableFuture<Void> preload = preloader.preload(loader);
+            assertFalse(preload.isDone());
+
+            preload.cancel(false);
+            tasks.forEach(Runnable::run);
+
+            assertTrue(loader.stopRecording().isEmpty());
+        }
+    }
+}
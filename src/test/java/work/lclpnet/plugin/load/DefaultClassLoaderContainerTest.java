@@ -0,0 +1,315 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import work.lclpnet.plugin.mock.TestManifestLoader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultClassLoaderContainerTest {
+
+    private static final Path PLUGINS_DIR = Path.of("src/test/resources/plugins");
+
+    @Test
+    void getPackageNames_providerPlugin_containsPackages() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            container.add(provider);
+
+            var packages = provider.getPackageNames().orElseThrow();
+            assertEquals(Set.of("work.lclpnet.provider", "work.lclpnet.provider.spi"), packages);
+        }
+    }
+
+    @Test
+    void resolve_otherPluginClass_resolved() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            var resolved = container.resolve("work.lclpnet.provider.spi.TestService", test);
+            assertTrue(resolved.isPresent());
+            assertEquals(provider, resolved.get().getClassLoader());
+        }
+    }
+
+    @Test
+    void resolve_classInManifestClassPath_resolved() throws IOException {
+        Path jar = createClassPathJar("providerPlugin.jar");
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var manifest = TestManifestLoader.manifest("provider", Set.of());
+            var provider = new PluginClassLoader(jar.toUri().toURL(), getClass().getClassLoader(), manifest,
+                    container, container);
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            assertTrue(provider.getPackageNames().orElseThrow().contains("work.lclpnet.provider.spi"));
+
+            var resolved = container.resolve("work.lclpnet.provider.spi.TestService", test);
+            assertTrue(resolved.isPresent());
+            assertEquals(provider, resolved.get().getClassLoader());
+        }
+    }
+
+    @Test
+    void resolve_unknownPackage_empty() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            assertTrue(container.resolve("work.lclpnet.unknown.Foo", test).isEmpty());
+            assertTrue(container.resolve("work.lclpnet.provider.spi.Unknown", test).isEmpty());
+        }
+    }
+
+    @Test
+    void resolve_removedLoader_empty() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+            container.remove(provider);
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.TestService", test).isEmpty());
+        }
+    }
+
+    @Test
+    void removeBatch_removedLoader_resolvableUntilCompleted() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            container.removeBatch(() -> {
+                container.remove(provider);
+
+                // dependants may still use the classes of removed loaders while the batch is running
+                assertTrue(container.resolve("work.lclpnet.provider.spi.TestService", test).isPresent());
+            });
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.TestService", test).isEmpty());
+        }
+    }
+
+    @Test
+    void resolve_sideBySideGenerations_sameGenerationResolved() throws IOException {
+        for (var visibility : ClassVisibility.values()) {
+            try (var container = new DefaultClassLoaderContainer(visibility)) {
+                var provider = createLoader(container, "providerPlugin.jar", "provider");
+                var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+                container.add(provider);
+                container.add(test);
+
+                // new versions of both plugins, loaded next to the old ones
+                var newProvider = createLoader(container, "providerPlugin.jar", "provider");
+                var newTest = createLoader(container, "testPlugin.jar", "test", "provider");
+
+                container.add(newProvider);
+                container.add(newTest);
+
+                var resolved = container.resolve("work.lclpnet.provider.spi.TestService", test).orElseThrow();
+                assertEquals(provider, resolved.getClassLoader());
+
+                resolved = container.resolve("work.lclpnet.provider.spi.TestService", newTest).orElseThrow();
+                assertEquals(newProvider, resolved.getClassLoader());
+
+                // after the swap, the old versions are removed
+                container.remove(test);
+                container.remove(provider);
+
+                resolved = container.resolve("work.lclpnet.provider.spi.TestService", newTest).orElseThrow();
+                assertEquals(newProvider, resolved.getClassLoader());
+            }
+        }
+    }
+
+    @Test
+    void resolve_unresolvableTwice_negativeCacheHit() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.Unknown", test).isEmpty());
+            assertEquals(0, container.getNegativeCacheHits());
+            assertEquals(1, container.getNegativeCacheMisses());
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.Unknown", test).isEmpty());
+            assertEquals(1, container.getNegativeCacheHits());
+            assertEquals(1, container.getNegativeCacheMisses());
+        }
+    }
+
+    @Test
+    void resolve_loaderAdded_negativeCacheInvalidated() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(test);
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.TestService", test).isEmpty());
+
+            container.add(provider);
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.TestService", test).isPresent());
+            assertEquals(0, container.getNegativeCacheHits());
+        }
+    }
+
+    @Test
+    void resolve_dependencyVisibility_onlyDependencies() throws IOException {
+        try (var container = new DefaultClassLoaderContainer(ClassVisibility.DEPENDENCIES)) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            assertTrue(container.resolve("work.lclpnet.provider.spi.TestService", test).isPresent());
+            assertTrue(container.resolve("work.lclpnet.testPlugin.TestPlugin", provider).isEmpty());
+        }
+    }
+
+    @Test
+    void resolve_allVisibility_dependantVisible() throws IOException {
+        try (var container = new DefaultClassLoaderContainer(ClassVisibility.ALL)) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+            container.add(test);
+
+            assertTrue(container.resolve("work.lclpnet.testPlugin.TestPlugin", provider).isPresent());
+        }
+    }
+
+    @Test
+    void resolveResources_sameNameTwice_cached() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var counting = new CountingClassLoader();
+
+            container.add(provider);
+            container.add(counting);
+
+            var first = Collections.list(container.resolveResources("plugin.json", null));
+            var second = Collections.list(container.resolveResources("plugin.json", null));
+
+            assertEquals(first, second);
+            assertTrue(first.stream().anyMatch(url -> url.toString().contains("providerPlugin.jar")));
+            assertEquals(1, counting.lookups.get());
+
+            // other loaders are skipped, also when cached
+            assertTrue(Collections.list(container.resolveResources("plugin.json", provider)).stream()
+                    .noneMatch(url -> url.toString().contains("providerPlugin.jar")));
+        }
+    }
+
+    @Test
+    void resolveResources_loaderAdded_cacheInvalidated() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var test = createLoader(container, "testPlugin.jar", "test", "provider");
+
+            container.add(provider);
+
+            var before = Collections.list(container.resolveResources("plugin.json", null));
+            container.add(test);
+            var after = Collections.list(container.resolveResources("plugin.json", null));
+
+            assertTrue(before.stream().noneMatch(url -> url.toString().contains("testPlugin.jar")));
+            assertTrue(after.stream().anyMatch(url -> url.toString().contains("testPlugin.jar")));
+        }
+    }
+
+    @Test
+    void resolveResources_firstElement_laterLoadersNotQueried() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = createLoader(container, "providerPlugin.jar", "provider");
+            var counting = new CountingClassLoader();
+
+            container.add(provider);
+            container.add(counting);
+
+            var resources = container.resolveResources("plugin.json", null);
+            assertTrue(resources.nextElement().toString().contains("providerPlugin.jar"));
+            assertEquals(0, counting.lookups.get());
+        }
+    }
+
+    private static class CountingClassLoader extends ClassLoader {
+
+        final AtomicInteger lookups = new AtomicInteger();
+
+        CountingClassLoader() {
+            super(null);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            lookups.incrementAndGet();
+            return super.getResources(name);
+        }
+    }
+
+    /**
+     * Create a jar that has no entries of its own, but references a copy of the given plugin jar in the "Class-Path"
+     * attribute of its manifest.
+     */
+    static Path createClassPathJar(String referencedJar) throws IOException {
+        Path dir = Files.createTempDirectory("classPath");
+        Files.copy(PLUGINS_DIR.resolve(referencedJar), dir.resolve("lib.jar"));
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib.jar missing.jar");
+
+        Path jar = dir.resolve("main.jar");
+
+        try (OutputStream out = Files.newOutputStream(jar);
+             var ignored = new JarOutputStream(out, manifest)) {
+            // only the manifest
+        }
+
+        return jar;
+    }
+
+    static PluginClassLoader createLoader(DefaultClassLoaderContainer container, String jar, String id,
+                                          String... dependencies) throws IOException {
+        URL url = PLUGINS_DIR.resolve(jar).toUri().toURL();
+        var manifest = TestManifestLoader.manifest(id, Set.of(dependencies));
+
+        return new PluginClassLoader(url, DefaultClassLoaderContainerTest.class.getClassLoader(), manifest,
+                container, container);
+    }
+}
@@ -0,0 +1,95 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import work.lclpnet.plugin.manifest.BasePluginManifest;
+import work.lclpnet.plugin.manifest.DelegationRules;
+import work.lclpnet.plugin.manifest.PluginManifest;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static work.lclpnet.plugin.load.DelegationPolicy.Route.*;
+
+class DelegationPolicyTest {
+
+    private static final Path PLUGINS_DIR = Path.of("src/test/resources/plugins");
+    private static final String TEST_SERVICE = "work.lclpnet.provider.spi.TestService";
+
+    private static PluginManifest manifest(String id, Set<String> dependencies, DelegationRules rules) {
+        return new BasePluginManifest("0.1.0-SNAPSHOT", id, null, dependencies, Set.of(), List.of(), rules);
+    }
+
+    private static URL jar(String name) throws IOException {
+        return PLUGINS_DIR.resolve(name).toUri().toURL();
+    }
+
+    @Test
+    void route_mostSpecificPackage_wins() {
+        var policy = DelegationPolicy.builder()
+                .parentOnly("work.lclpnet")
+                .childFirst("work.lclpnet.provider")
+                .neverDelegate("work.lclpnet.provider.spi")
+                .build();
+
+        assertEquals(PARENT_ONLY, policy.route("work.lclpnet.plugin.Plugin"));
+        assertEquals(CHILD_FIRST, policy.route("work.lclpnet.provider.Instance"));
+        assertEquals(NEVER_DELEGATE, policy.route(TEST_SERVICE));
+        assertEquals(DEFAULT, policy.route("work.other.Foo"));
+        assertEquals(DEFAULT, policy.route("Foo"));
+        assertFalse(policy.mayDelegate(TEST_SERVICE));
+    }
+
+    @Test
+    void loadClass_parentOnly_pluginNotAsked() throws IOException {
+        var rules = new DelegationRules(Set.of("work.lclpnet.provider"), Set.of(), Set.of());
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loader = new PluginClassLoader(new URL[] { jar("providerPlugin.jar") }, null,
+                    manifest("provider", Set.of(), rules), container, container, null);
+            container.add(loader);
+
+            assertThrows(ClassNotFoundException.class, () -> loader.loadClass(TEST_SERVICE));
+        }
+    }
+
+    @Test
+    void loadClass_neverDelegate_containerNotAsked() throws IOException, ClassNotFoundException {
+        var rules = new DelegationRules(Set.of(), Set.of(), Set.of("work.lclpnet.provider"));
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var provider = DefaultClassLoaderContainerTest.createLoader(container, "providerPlugin.jar", "provider");
+            var test = new PluginClassLoader(new URL[] { jar("testPlugin.jar") }, getClass().getClassLoader(),
+                    manifest("test", Set.of("provider"), rules), container, container, null);
+
+            container.add(provider);
+            container.add(test);
+
+            assertThrows(ClassNotFoundException.class, () -> test.loadClass(TEST_SERVICE));
+            assertEquals(0, container.getNegativeCacheMisses());
+
+            // the plugin's own classes are still found
+            assertEquals(test, test.loadClass("work.lclpnet.testPlugin.TestPlugin").getClassLoader());
+        }
+    }
+
+    @Test
+    void loadClass_childFirst_ownClassBeforeParent() throws IOException, ClassNotFoundException {
+        var rules = new DelegationRules(Set.of(), Set.of("work.lclpnet.provider.spi"), Set.of());
+
+        try (var parent = new URLClassLoader(new URL[] { jar("providerPlugin.jar") }, null);
+             var container = new DefaultClassLoaderContainer()) {
+
+            var childFirst = new PluginClassLoader(new URL[] { jar("providerPlugin.jar") }, parent,
+                    manifest("provider", Set.of(), rules), container, container, null);
+            container.add(childFirst);
+
+            assertEquals(childFirst, childFirst.loadClass(TEST_SERVICE).getClassLoader());
+            assertEquals(parent, childFirst.loadClass("work.lclpnet.provider.Instance").getClassLoader());
+        }
+    }
+}
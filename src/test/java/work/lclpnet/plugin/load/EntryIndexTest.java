@@ -0,0 +1,85 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import work.lclpnet.plugin.mock.TestManifestLoader;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntryIndexTest {
+
+    private static final Path TEST_PLUGIN = Path.of("src/test/resources/plugins/testPlugin.jar");
+
+    @Test
+    void mightContain_testPlugin_correct() throws IOException {
+        var index = EntryIndex.of(new URL[] { TEST_PLUGIN.toUri().toURL() }).orElseThrow();
+
+        assertTrue(index.mightContain("work/lclpnet/testPlugin/TestPlugin.class"));
+        assertTrue(index.mightContain("plugin.json"));
+        assertTrue(index.mightContain("META-INF/services/work.lclpnet.provider.spi.TestServiceProvider"));
+        assertTrue(index.mightContain("META-INF/services/"));
+        assertTrue(index.mightContain("META-INF/services"));
+        assertTrue(index.mightContain(""));
+
+        assertFalse(index.mightContain("work/lclpnet/testPlugin/Unknown.class"));
+        assertFalse(index.mightContain("META-INF/services/unknown"));
+    }
+
+    @Test
+    void getPackageNames_testPlugin_correct() throws IOException {
+        var index = EntryIndex.of(new URL[] { TEST_PLUGIN.toUri().toURL() }).orElseThrow();
+
+        assertEquals(Set.of("work.lclpnet.testPlugin", "work.lclpnet.testPlugin.spi"), index.getPackageNames());
+    }
+
+    @Test
+    void mightContain_manifestClassPath_includesReferencedJar() throws IOException {
+        Path jar = DefaultClassLoaderContainerTest.createClassPathJar("providerPlugin.jar");
+        var index = EntryIndex.of(new URL[] { jar.toUri().toURL() }).orElseThrow();
+
+        assertTrue(index.mightContain("work/lclpnet/provider/spi/TestService.class"));
+        assertTrue(index.mightContain("plugin.json"));
+        assertTrue(index.getPackageNames().contains("work.lclpnet.provider.spi"));
+    }
+
+    @Test
+    void findResource_manifestClassPath_found() throws IOException {
+        Path jar = DefaultClassLoaderContainerTest.createClassPathJar("providerPlugin.jar");
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var manifest = TestManifestLoader.manifest("provider", Set.of());
+            var provider = new PluginClassLoader(jar.toUri().toURL(), getClass().getClassLoader(), manifest,
+                    container, container);
+            container.add(provider);
+
+            assertNotNull(provider.findResource("work/lclpnet/provider/spi/TestService.class"));
+            assertTrue(provider.findResources("plugin.json").hasMoreElements());
+        }
+    }
+
+    @Test
+    void of_directory_empty() throws IOException {
+        Path dir = Files.createTempDirectory("entries");
+        Files.writeString(dir.resolve("plugin.json"), "{}");
+
+        assertTrue(EntryIndex.of(new URL[] { dir.toUri().toURL() }).isEmpty());
+    }
+
+    @Test
+    void findResource_notInIndex_null() throws IOException {
+        try (var container = new DefaultClassLoaderContainer()) {
+            var test = DefaultClassLoaderContainerTest.createLoader(container, "testPlugin.jar", "test");
+            container.add(test);
+
+            assertTrue(test.getEntryIndex().isPresent());
+            assertNotNull(test.findResource("plugin.json"));
+            assertNull(test.findResource("unknown.json"));
+            assertFalse(test.findResources("unknown.json").hasMoreElements());
+        }
+    }
+}
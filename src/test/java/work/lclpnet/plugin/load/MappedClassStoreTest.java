@@ -0,0 +1,163 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import work.lclpnet.plugin.mock.TestManifestLoader;
+import work.lclpnet.plugin.util.ClassPathHash;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedClassStoreTest {
+
+    private static final Path PROVIDER_PLUGIN = Path.of("src/test/resources/plugins/providerPlugin.jar");
+
+    @Test
+    void open_providerPlugin_containsClasses() throws IOException {
+        var directory = Files.createTempDirectory("classes");
+        var urls = new URL[] { PROVIDER_PLUGIN.toUri().toURL() };
+
+        try (var store = MappedClassStore.open(directory, "provider", urls).orElseThrow()) {
+            var classFile = store.find("work.lclpnet.provider.ProviderPlugin");
+            assertNotNull(classFile);
+            assertEquals(urls[0], classFile.codeSource());
+
+            // class files start with 0xCAFEBABE
+            assertEquals(0xCAFEBABE, classFile.bytes().getInt(0));
+
+            assertNull(store.find("work.lclpnet.provider.Unknown"));
+        }
+    }
+
+    @Test
+    void open_twice_builtOnce() throws IOException {
+        var directory = Files.createTempDirectory("classes");
+        var urls = new URL[] { PROVIDER_PLUGIN.toUri().toURL() };
+
+        MappedClassStore.open(directory, "provider", urls).orElseThrow().close();
+        MappedClassStore.open(directory, "provider", urls).orElseThrow().close();
+
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void loadClass_fromStore_defined() throws IOException, ClassNotFoundException {
+        var directory = Files.createTempDirectory("classes");
+        var urls = new URL[] { PROVIDER_PLUGIN.toUri().toURL() };
+        var manifest = TestManifestLoader.manifest("provider", Set.of());
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var store = MappedClassStore.factory(directory).create(manifest, urls, ClassPathHash.of(urls)).orElseThrow();
+            var loader = new PluginClassLoader(urls, getClass().getClassLoader(), manifest, container, container, store);
+            container.add(loader);
+
+            Class<?> c = loader.loadClass("work.lclpnet.provider.spi.TestServiceManager");
+            assertEquals(loader, c.getClassLoader());
+            assertEquals(urls[0], c.getProtectionDomain().getCodeSource().getLocation());
+            assertEquals("work.lclpnet.provider.spi", c.getPackageName());
+        }
+    }
+
+    @Test
+    void open_truncatedStore_rebuilt() throws IOException {
+        var directory = Files.createTempDirectory("classes");
+        var urls = new URL[] { PROVIDER_PLUGIN.toUri().toURL() };
+
+        MappedClassStore.open(directory, "provider", urls).orElseThrow().close();
+
+        // the class file offsets of the header now point beyond the end of the file
+        Path file = storeFile(directory);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        try (var store = MappedClassStore.open(directory, "provider", urls).orElseThrow()) {
+            var classFile = store.find("work.lclpnet.provider.ProviderPlugin");
+            assertNotNull(classFile);
+            assertEquals(0xCAFEBABE, classFile.bytes().getInt(0));
+        }
+
+        assertEquals(bytes.length, Files.size(storeFile(directory)));
+    }
+
+    @Test
+    void open_garbageStore_rebuilt() throws IOException {
+        var directory = Files.createTempDirectory("classes");
+        var urls = new URL[] { PROVIDER_PLUGIN.toUri().toURL() };
+
+        MappedClassStore.open(directory, "provider", urls).orElseThrow().close();
+
+        // a valid magic and version, followed by an absurd slot count
+        var header = ByteBuffer.allocate(16).putInt(0x504c4353).putInt(1).putInt(Integer.MAX_VALUE);
+        Files.write(storeFile(directory), header.array());
+
+        try (var store = MappedClassStore.open(directory, "provider", urls).orElseThrow()) {
+            assertNotNull(store.find("work.lclpnet.provider.ProviderPlugin"));
+        }
+    }
+
+    @Test
+    void open_multiReleaseJar_versionedClass() throws IOException {
+        var directory = Files.createTempDirectory("classes");
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+
+        var jar = createJar(directory.resolve("multi.jar"), manifest, Map.of(
+                "test/Versioned.class", new byte[] { 1 },
+                "META-INF/versions/9/test/Versioned.class", new byte[] { 9 }
+        ));
+
+        try (var store = MappedClassStore.open(directory.resolve("store"), "multi", new URL[] { jar }).orElseThrow()) {
+            var classFile = store.find("test.Versioned");
+            assertNotNull(classFile);
+            assertEquals(ByteBuffer.wrap(new byte[] { 9 }), classFile.bytes());
+        }
+    }
+
+    @Test
+    void open_classPathManifest_loadedFromUrls() throws IOException {
+        var directory = Files.createTempDirectory("classes");
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "library.jar");
+
+        var jar = createJar(directory.resolve("referencing.jar"), manifest, Map.of(
+                "test/Referencing.class", new byte[] { 1 }
+        ));
+
+        try (var store = MappedClassStore.open(directory.resolve("store"), "referencing", new URL[] { jar }).orElseThrow()) {
+            assertNull(store.find("test.Referencing"));
+        }
+    }
+
+    private static Path storeFile(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+
+    private static URL createJar(Path path, Manifest manifest, Map<String, byte[]> entries) throws IOException {
+        try (var jarOut = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            for (var entry : entries.entrySet()) {
+                jarOut.putNextEntry(new JarEntry(entry.getKey()));
+                jarOut.write(entry.getValue());
+                jarOut.closeEntry();
+            }
+        }
+
+        return path.toUri().toURL();
+    }
+}
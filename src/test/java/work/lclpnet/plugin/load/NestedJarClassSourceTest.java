@@ -0,0 +1,208 @@
+package work.lclpnet.plugin.load;
+
+import org.junit.jupiter.api.Test;
+import work.lclpnet.plugin.manifest.BasePluginManifest;
+import work.lclpnet.plugin.manifest.DelegationRules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NestedJarClassSourceTest {
+
+    private static final Path PROVIDER_PLUGIN = Path.of("src/test/resources/plugins/providerPlugin.jar");
+    private static final String LIBRARY = "META-INF/libs/provider.jar";
+
+    private static Path createOuterJar() throws IOException {
+        Path jar = Files.createTempDirectory("nested").resolve("outer.jar");
+
+        try (OutputStream out = Files.newOutputStream(jar); var jarOut = new JarOutputStream(out)) {
+            jarOut.putNextEntry(new JarEntry(LIBRARY));
+            jarOut.write(Files.readAllBytes(PROVIDER_PLUGIN));
+            jarOut.closeEntry();
+        }
+
+        return jar;
+    }
+
+    @Test
+    void load_nestedEntryPoint_loadedFromMemory() throws IOException {
+        var outer = createOuterJar();
+        var manifest = new BasePluginManifest("0.1.0-SNAPSHOT", "provider", "work.lclpnet.provider.ProviderPlugin",
+                Set.of(), Set.of(), List.of(LIBRARY), DelegationRules.NONE);
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loadable = new UrlLoadablePlugin(manifest, outer.toUri().toURL(), outer, container);
+            var loaded = loadable.load();
+
+            Class<?> pluginClass = loaded.getPlugin().getClass();
+            assertInstanceOf(PluginClassLoader.class, pluginClass.getClassLoader());
+
+            URL location = pluginClass.getProtectionDomain().getCodeSource().getLocation();
+            assertEquals("jar:" + outer.toUri().toURL() + "!/" + LIBRARY, location.toString());
+
+            var loader = (PluginClassLoader) pluginClass.getClassLoader();
+            assertTrue(loader.getPackageNames().orElseThrow().contains("work.lclpnet.provider.spi"));
+        }
+    }
+
+    @Test
+    void getResource_nested_readable() throws IOException {
+        var outer = createOuterJar();
+        var urls = new URL[] { outer.toUri().toURL() };
+        var manifest = new BasePluginManifest("0.1.0-SNAPSHOT", "provider", null, Set.of());
+
+        final byte[] expected;
+        try (var jar = new JarFile(PROVIDER_PLUGIN.toFile()); InputStream in = jar.getInputStream(jar.getJarEntry("plugin.json"))) {
+            expected = in.readAllBytes();
+        }
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var source = NestedJarClassSource.open(urls, List.of(LIBRARY));
+            var loader = new PluginClassLoader(urls, null, manifest, container, container, source);
+            container.add(loader);
+
+            URL resource = loader.getResource("plugin.json");
+            assertNotNull(resource);
+            assertEquals(NestedJarClassSource.PROTOCOL, resource.getProtocol());
+
+            try (InputStream in = resource.openStream()) {
+                assertArrayEquals(expected, in.readAllBytes());
+            }
+
+            assertNull(loader.getResource("unknown.json"));
+        }
+    }
+
+    @Test
+    void find_deflatedClass_inflatedOnDemand() throws IOException {
+        var urls = new URL[] { createOuterJar().toUri().toURL() };
+
+        final byte[] expected;
+        try (var jar = new JarFile(PROVIDER_PLUGIN.toFile());
+             InputStream in = jar.getInputStream(jar.getJarEntry("work/lclpnet/provider/Instance.class"))) {
+            expected = in.readAllBytes();
+        }
+
+        try (var source = NestedJarClassSource.open(urls, List.of(LIBRARY))) {
+            var classFile = source.find("work.lclpnet.provider.Instance");
+            assertNotNull(classFile);
+
+            byte[] actual = new byte[classFile.bytes().remaining()];
+            classFile.bytes().get(actual);
+            assertArrayEquals(expected, actual);
+
+            assertNull(source.find("work.lclpnet.provider.Unknown"));
+        }
+    }
+
+    @Test
+    void findResources_storedEntry_readable() throws IOException {
+        final byte[] content = "stored content".getBytes(StandardCharsets.UTF_8);
+
+        var library = new ByteArrayOutputStream();
+
+        try (var jarOut = new JarOutputStream(library)) {
+            var crc = new CRC32();
+            crc.update(content);
+
+            var entry = new JarEntry("data.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+
+            jarOut.putNextEntry(entry);
+            jarOut.write(content);
+            jarOut.closeEntry();
+        }
+
+        Path outer = Files.createTempDirectory("nested").resolve("outer.jar");
+
+        try (OutputStream out = Files.newOutputStream(outer); var jarOut = new JarOutputStream(out)) {
+            jarOut.putNextEntry(new JarEntry(LIBRARY));
+            jarOut.write(library.toByteArray());
+            jarOut.closeEntry();
+        }
+
+        try (var source = NestedJarClassSource.open(new URL[] { outer.toUri().toURL() }, List.of(LIBRARY))) {
+            var resources = source.findResources("data.txt");
+            assertEquals(1, resources.size());
+
+            try (InputStream in = resources.get(0).openStream()) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void load_classAndResourceInBoth_pluginJarFirst() throws IOException {
+        Path outer = Files.createTempDirectory("nested").resolve("outer.jar");
+
+        // the outer jar contains the same classes and resources as its nested library
+        try (OutputStream out = Files.newOutputStream(outer); var jarOut = new JarOutputStream(out);
+             var provider = new JarFile(PROVIDER_PLUGIN.toFile())) {
+
+            for (JarEntry entry : Collections.list(provider.entries())) {
+                if (entry.isDirectory()) continue;
+
+                jarOut.putNextEntry(new JarEntry(entry.getName()));
+
+                try (InputStream in = provider.getInputStream(entry)) {
+                    in.transferTo(jarOut);
+                }
+
+                jarOut.closeEntry();
+            }
+
+            jarOut.putNextEntry(new JarEntry(LIBRARY));
+            jarOut.write(Files.readAllBytes(PROVIDER_PLUGIN));
+            jarOut.closeEntry();
+        }
+
+        var manifest = new BasePluginManifest("0.1.0-SNAPSHOT", "provider", "work.lclpnet.provider.ProviderPlugin",
+                Set.of(), Set.of(), List.of(LIBRARY), DelegationRules.NONE);
+
+        try (var container = new DefaultClassLoaderContainer()) {
+            var loadable = new UrlLoadablePlugin(manifest, outer.toUri().toURL(), outer, container);
+            var loaded = loadable.load();
+
+            Class<?> pluginClass = loaded.getPlugin().getClass();
+            URL location = pluginClass.getProtectionDomain().getCodeSource().getLocation();
+            assertEquals(outer.toUri().toURL(), location);
+
+            var loader = (PluginClassLoader) pluginClass.getClassLoader();
+
+            URL resource = loader.getResource("plugin.json");
+            assertNotNull(resource);
+            assertEquals("jar", resource.getProtocol());
+
+            List<URL> resources = Collections.list(loader.getResources("plugin.json"));
+            assertEquals(2, resources.size());
+            assertEquals(resource, resources.get(0));
+            assertEquals(NestedJarClassSource.PROTOCOL, resources.get(1).getProtocol());
+        }
+    }
+
+    @Test
+    void open_missingLibrary_throws() throws IOException {
+        var urls = new URL[] { createOuterJar().toUri().toURL() };
+
+        assertThrows(IOException.class, () -> NestedJarClassSource.open(urls, List.of("META-INF/libs/missing.jar")));
+    }
+}
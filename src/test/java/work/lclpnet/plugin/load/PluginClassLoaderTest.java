@@ -11,13 +11,15 @@ import work.lclpnet.plugin.manifest.JsonManifestLoader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class PluginClassLoaderTest {
 
@@ -67,6 +69,56 @@ class PluginClassLoaderTest {
         }
     }
 
+    @Test
+    void testParallelCrossPluginLoading() throws Exception {
+        var pluginsDir = Path.of("src/test/resources/plugins");
+        assertTrue(Files.isDirectory(pluginsDir));
+
+        try (var clContainer = new DefaultClassLoaderContainer()) {
+            var provider = DefaultClassLoaderContainerTest.createLoader(clContainer, "providerPlugin.jar", "provider");
+            var test = DefaultClassLoaderContainerTest.createLoader(clContainer, "testPlugin.jar", "test", "provider");
+
+            clContainer.add(provider);
+            clContainer.add(test);
+
+            assertTrue(test.isRegisteredAsParallelCapable());
+
+            var executor = Executors.newFixedThreadPool(8);
+
+            try {
+                List<Future<Class<?>>> futures = new ArrayList<>();
+
+                for (int i = 0; i < 64; i++) {
+                    futures.add(executor.submit(() -> test.loadClass("work.lclpnet.provider.spi.TestServiceManager")));
+                }
+
+                for (var future : futures) {
+                    assertEquals(provider, future.get().getClassLoader());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testTryFindClass() throws IOException {
+        try (var clContainer = new DefaultClassLoaderContainer()) {
+            var provider = DefaultClassLoaderContainerTest.createLoader(clContainer, "providerPlugin.jar", "provider");
+            var test = DefaultClassLoaderContainerTest.createLoader(clContainer, "testPlugin.jar", "test", "provider");
+
+            clContainer.add(provider);
+            clContainer.add(test);
+
+            assertNull(test.tryFindClass("work.lclpnet.provider.spi.Unknown"));
+            assertNull(test.tryFindClass("work.lclpnet.unknown.Unknown"));
+            assertEquals(test, test.tryFindClass("work.lclpnet.testPlugin.TestPlugin").getClassLoader());
+            assertEquals(provider, test.tryFindClass("work.lclpnet.provider.spi.TestService").getClassLoader());
+
+            assertThrows(ClassNotFoundException.class, () -> test.loadClass("work.lclpnet.provider.spi.Unknown"));
+        }
+    }
+
     private static void invokeSpi(Plugin provider) throws ReflectiveOperationException {
         PluginClassLoader classLoader = (PluginClassLoader) provider.getClass().getClassLoader();
 
@@ -1,9 +1,11 @@
 package work.lclpnet.plugin.load;
 
 import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
 import work.lclpnet.plugin.manifest.JsonManifestLoader;
 import work.lclpnet.plugin.manifest.PluginManifest;
 import work.lclpnet.plugin.mock.TestManifestLoader;
+import work.lclpnet.plugin.util.ClassPathHash;
 
 import java.io.File;
 import java.io.IOException;
@@ -11,8 +13,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.jar.JarFile;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -107,4 +111,41 @@ class UrlLoadablePluginTest {
             assertEquals(manifest, loaded.getManifest());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void load_classSourceAndClassListCache_shareHash() throws IOException {
+        var providerPlugin = Path.of("src/test/resources/plugins/providerPlugin.jar");
+        var manifest = TestManifestLoader.manifest(
+                "provider",
+                "work.lclpnet.provider.ProviderPlugin",
+                Collections.emptySet()
+        );
+
+        var directory = Files.createTempDirectory("caches");
+        var hashes = new ArrayList<ClassPathHash>();
+        var storeFactory = MappedClassStore.factory(directory.resolve("classes"));
+
+        var cache = new ClassListCache(directory.resolve("lists"), Runnable::run, LoggerFactory.getLogger("test")) {
+            @Override
+            public CompletableFuture<Void> prepare(PluginClassLoader classLoader, ClassPathHash classPathHash) {
+                hashes.add(classPathHash);
+                return super.prepare(classLoader, classPathHash);
+            }
+        };
+
+        try (var clContainer = new DefaultClassLoaderContainer()) {
+            var loadable = new UrlLoadablePlugin(manifest, providerPlugin.toUri().toURL(), providerPlugin, clContainer);
+            loadable.setClassListCache(cache);
+            loadable.setClassSourceFactory((pluginManifest, urls, hash) -> {
+                hashes.add(hash);
+                return storeFactory.create(pluginManifest, urls, hash);
+            });
+
+            assertNotNull(loadable.load().getPlugin());
+        }
+
+        // the classpath was hashed once, for both the class store and the class list
+        assertEquals(2, hashes.size());
+        assertSame(hashes.get(0), hashes.get(1));
+    }
+}
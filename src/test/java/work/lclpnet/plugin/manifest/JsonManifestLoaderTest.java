@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -216,6 +217,79 @@ class JsonManifestLoaderTest {
         );
     }
 
+    @Test
+    void load_preload_parsed() throws IOException {
+        var json = createMinimalTestManifest()
+                .withPreload(new JSONArray("[\"*\", \"work.lclpnet.testPlugin.*\"]"))
+                .build();
+
+        PluginManifest manifest;
+        try (var in = input(json)) {
+            manifest = new JsonManifestLoader().load(in);
+        }
+
+        assertEquals(Set.of("*", "work.lclpnet.testPlugin.*"), manifest.preload());
+    }
+
+    @Test
+    void load_invalidPreload_throws() throws IOException {
+        // type needs to be a string array or null
+        assertInvalidPropertyTypes(
+                JsonBuilder::withPreload,
+                CHECK_NUMBER, CHECK_BOOLEAN, CHECK_OBJECT, CHECK_STRING, CHECK_ANY_ARRAY
+        );
+    }
+
+    @Test
+    void load_libraries_parsedInOrder() throws IOException {
+        var json = createMinimalTestManifest()
+                .withLibraries(new JSONArray("[\"META-INF/libs/b.jar\", \"META-INF/libs/a.jar\"]"))
+                .build();
+
+        PluginManifest manifest;
+        try (var in = input(json)) {
+            manifest = new JsonManifestLoader().load(in);
+        }
+
+        assertEquals(List.of("META-INF/libs/b.jar", "META-INF/libs/a.jar"), manifest.libraries());
+    }
+
+    @Test
+    void load_invalidLibraries_throws() throws IOException {
+        // type needs to be a string array or null
+        assertInvalidPropertyTypes(
+                JsonBuilder::withLibraries,
+                CHECK_NUMBER, CHECK_BOOLEAN, CHECK_OBJECT, CHECK_STRING, CHECK_ANY_ARRAY
+        );
+    }
+
+    @Test
+    void load_delegation_parsed() throws IOException {
+        var json = createMinimalTestManifest()
+                .withDelegation(new JSONObject("{\"parentOnly\": [\"work.lclpnet.plugin\"], \"childFirst\": [\"org.lib\"]}"))
+                .build();
+
+        PluginManifest manifest;
+        try (var in = input(json)) {
+            manifest = new JsonManifestLoader().load(in);
+        }
+
+        assertEquals(new DelegationRules(Set.of("work.lclpnet.plugin"), Set.of("org.lib"), emptySet()), manifest.delegation());
+    }
+
+    @Test
+    void load_invalidDelegation_throws() throws IOException {
+        assertInvalidPropertyTypes(
+                JsonBuilder::withDelegation,
+                CHECK_NUMBER, CHECK_BOOLEAN, CHECK_STRING, CHECK_ANY_ARRAY
+        );
+
+        // the rules need to be string arrays
+        assertThrowsManifestException(createMinimalTestManifest()
+                .withDelegation(new JSONObject("{\"parentOnly\": true}"))
+                .build());
+    }
+
     private static class JsonBuilder {
         private final JSONObject obj = new JSONObject();
 
@@ -248,6 +322,21 @@ class JsonManifestLoaderTest {
             return this;
         }
 
+        public JsonBuilder withPreload(Object entry) {
+            obj.put("preload", entry);
+            return this;
+        }
+
+        public JsonBuilder withLibraries(Object entry) {
+            obj.put("libraries", entry);
+            return this;
+        }
+
+        public JsonBuilder withDelegation(Object entry) {
+            obj.put("delegation", entry);
+            return this;
+        }
+
         public String build() {
             return obj.toString();
         }
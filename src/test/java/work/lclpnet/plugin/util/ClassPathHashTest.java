@@ -0,0 +1,32 @@
+package work.lclpnet.plugin.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassPathHashTest {
+
+    private static final Path PROVIDER_PLUGIN = Path.of("src/test/resources/plugins/providerPlugin.jar");
+
+    @Test
+    void get_twice_computedOnce() throws IOException {
+        var urls = new URL[] { PROVIDER_PLUGIN.toUri().toURL() };
+        var hash = ClassPathHash.of(urls);
+
+        var first = hash.get();
+        assertTrue(first.isPresent());
+        assertSame(first, hash.get());
+        assertEquals(ClassPathHash.sha256(urls), first);
+    }
+
+    @Test
+    void get_remoteUrl_empty() throws IOException {
+        var hash = ClassPathHash.of(new URL[] { new URL("https://example.com/plugin.jar") });
+
+        assertTrue(hash.get().isEmpty());
+    }
+}
@@ -0,0 +1,53 @@
+package work.lclpnet.plugin.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompoundEnumerationTest {
+
+    @Test
+    void lazy_all_concatenated() {
+        List<Supplier<Enumeration<String>>> sources = List.of(
+                () -> Collections.enumeration(List.of("a", "b")),
+                () -> null,
+                Collections::emptyEnumeration,
+                () -> Collections.enumeration(List.of("c"))
+        );
+
+        assertEquals(List.of("a", "b", "c"), Collections.list(CompoundEnumeration.lazy(sources.iterator())));
+    }
+
+    @Test
+    void lazy_firstElement_onlyFirstSourceQueried() {
+        List<String> queried = new ArrayList<>();
+
+        List<Supplier<Enumeration<String>>> sources = List.of(
+                () -> {
+                    queried.add("first");
+                    return Collections.enumeration(List.of("a"));
+                },
+                () -> {
+                    queried.add("second");
+                    return Collections.enumeration(List.of("b"));
+                }
+        );
+
+        var enumeration = CompoundEnumeration.lazy(sources.iterator());
+
+        assertEquals("a", enumeration.nextElement());
+        assertEquals(List.of("first"), queried);
+    }
+
+    @Test
+    void lazy_exhausted_throws() {
+        List<Supplier<Enumeration<String>>> sources = List.of(Collections::emptyEnumeration);
+        var enumeration = CompoundEnumeration.lazy(sources.iterator());
+
+        assertFalse(enumeration.hasMoreElements());
+        assertThrows(NoSuchElementException.class, enumeration::nextElement);
+    }
+}